@@ -0,0 +1,60 @@
+package com.github.unthingable.harness.bench;
+
+import com.github.unthingable.harness.OscTemplate;
+import com.github.unthingable.harness.StateTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// ClientManager.broadcast on the host thread: boxing, encoding, shadow checks and queueing for every
+// client. The sender thread drains the queues concurrently, as it does in Bitwig.
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BroadcastBenchmark extends HarnessFixture {
+
+    private final OscTemplate midiIn = new OscTemplate("/midi/in", "iiii");
+    private final StateTemplate track = new StateTemplate("/state/track", "isisiiid", 8);
+    private int step = 0;
+
+    @Override
+    protected void createSources() {
+    }
+
+    // State for one track, with a new volume each time so that no client already has it
+    @Benchmark
+    public void stateTrack() {
+        step++;
+        clientManager.broadcast("/state/track", 3, "Bass", 3, "audio", 0, 0, 0, (step & 1023) / 1024.0);
+    }
+
+    // The same state from a template, as TrackBankObserver sends it: no key or address encoding per update,
+    // but still a fresh argument array and message, which shadows and the replay ring keep
+    @Benchmark
+    public void stateTrackTemplate() {
+        step++;
+        clientManager.broadcast(track, 3, "Bass", 3, "audio", 0, 0, 0, (step & 1023) / 1024.0);
+    }
+
+    // An event: encoded once for all clients, never conflated
+    @Benchmark
+    public void midiIn() {
+        step++;
+        clientManager.broadcast("/midi/in", 0, 0x90, step & 0x7F, 100);
+    }
+
+    // The same event from a pre-encoded template, as MidiProxy sends it
+    @Benchmark
+    public void midiInTemplate() {
+        step++;
+        clientManager.broadcast(midiIn.setInt(0, 0).setInt(1, 0x90).setInt(2, step & 0x7F).setInt(3, 100));
+    }
+}
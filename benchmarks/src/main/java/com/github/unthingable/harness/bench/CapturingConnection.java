@@ -0,0 +1,49 @@
+package com.github.unthingable.harness.bench;
+
+import com.github.unthingable.harness.ClientConnection;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Client connection that keeps sent packets in memory instead of sending them. Written by the sender
+// thread; the counters can be read from any thread. Only the last packet is kept, copied into a
+// buffer allocated up front, so capturing adds no allocation to the numbers being measured.
+public class CapturingConnection extends ClientConnection {
+
+    private static final int MAX_PACKET = 65536;
+
+    private final byte[] last = new byte[MAX_PACKET];
+    private int lastLength = 0;
+    private volatile long packets = 0;
+    private volatile long bytes = 0;
+
+    public CapturingConnection(int port) {
+        super(null, new InetSocketAddress("127.0.0.1", port));
+    }
+
+    @Override
+    public void send(ByteBuffer packet) {
+        int length = packet.remaining();
+        synchronized (last) {
+            lastLength = Math.min(length, MAX_PACKET);
+            packet.get(last, 0, lastLength);
+        }
+        bytes += length;
+        packets++;
+    }
+
+    public long getPackets() {
+        return packets;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public byte[] lastPacket() {
+        synchronized (last) {
+            return Arrays.copyOf(last, lastLength);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.github.unthingable.harness.bench;
+
+import com.bitwig.extension.callback.BooleanValueChangedCallback;
+import com.bitwig.extension.controller.api.TrackBank;
+import com.github.unthingable.harness.OscEncoder;
+import com.github.unthingable.harness.observers.ClipMatrixObserver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// ClipMatrixObserver snapshots, as sent on /connect and /state/get, and clip launches
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClipMatrixBenchmark extends HarnessFixture {
+
+    private static final int TRACKS = 8;
+
+    @Param({"8", "128"})
+    public int scenes;
+
+    private ClipMatrixObserver observer;
+    private BooleanValueChangedCallback[] playing;
+    private int step = 0;
+
+    @Override
+    protected void createSources() {
+        TrackBank trackBank = fakeHost.getHost().createMainTrackBank(TRACKS, 0, scenes);
+        observer = new ClipMatrixObserver(trackBank, clientManager, TRACKS, scenes);
+        clientManager.addObserver(observer);
+        playing = new BooleanValueChangedCallback[TRACKS * scenes];
+        for (int t = 0; t < TRACKS; t++) {
+            String slots = "host.createMainTrackBank(" + TRACKS + ",0," + scenes + ").getItemAt(" + t
+                    + ").clipLauncherSlotBank()";
+            for (int s = 0; s < scenes; s++) {
+                String slot = slots + ".getItemAt(" + s + ")";
+                // Every other slot has a clip
+                fakeHost.callback(slot + ".hasContent().addValueObserver(_)", BooleanValueChangedCallback.class)
+                        .valueChanged((s & 1) == 0);
+                playing[t * scenes + s] = fakeHost.callback(slot + ".isPlaying().addValueObserver(_)",
+                        BooleanValueChangedCallback.class);
+            }
+        }
+    }
+
+    // Encodes the snapshot as it would be bundled for a connecting client
+    @Benchmark
+    public void snapshot(Blackhole blackhole) {
+        observer.sendSnapshot((address, args) -> blackhole.consume(OscEncoder.encodeMessage(address, args)));
+    }
+
+    // One clip starts or stops playing
+    @Benchmark
+    public boolean launch() {
+        step++;
+        playing[step % playing.length].valueChanged((step / playing.length & 1) == 0);
+        return clientManager.flush();
+    }
+}
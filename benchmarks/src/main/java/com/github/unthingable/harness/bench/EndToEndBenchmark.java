@@ -0,0 +1,44 @@
+package com.github.unthingable.harness.bench;
+
+import com.bitwig.extension.callback.DoubleValueChangedCallback;
+import com.bitwig.extension.controller.api.TrackBank;
+import com.github.unthingable.harness.observers.TrackBankObserver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Latency from a host callback to the packet reaching every client's connection, across the
+// host thread, the client queues and the sender thread
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndBenchmark extends HarnessFixture {
+
+    private DoubleValueChangedCallback volume;
+    private int step = 0;
+
+    @Override
+    protected void createSources() {
+        TrackBank trackBank = fakeHost.getHost().createMainTrackBank(8, 0, 0);
+        clientManager.addObserver(new TrackBankObserver(trackBank, clientManager, 8));
+        volume = fakeHost.callback("host.createMainTrackBank(8,0,0).getItemAt(0).volume().value().addValueObserver(_)",
+                DoubleValueChangedCallback.class);
+    }
+
+    @Benchmark
+    public void volumeToWire() {
+        step++;
+        markSent();
+        volume.valueChanged((step & 1023) / 1024.0);
+        clientManager.flush();
+        awaitSent();
+    }
+}
@@ -0,0 +1,287 @@
+package com.github.unthingable.harness.bench;
+
+import com.bitwig.extension.api.opensoundcontrol.OscMessage;
+import com.bitwig.extension.api.opensoundcontrol.OscMethodCallback;
+import com.bitwig.extension.controller.api.ControllerHost;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Stand-in for Bitwig's ControllerHost, for running the harness without Bitwig. Every API object is a
+// dynamic proxy named by the calls that led to it, e.g. host.createMainTrackBank(8,0,8).getItemAt(3).
+// Calls returning an API interface return a child proxy (the same one for the same call), callbacks
+// passed in are recorded under the call, preferences return their initial value, and anything else
+// returns zero, false or "". A value that gets subscribed reports zero, false or "" to its observer,
+// as Bitwig reports the current value. Scheduled tasks run on runTasks(), in order, ignoring their delay.
+public class FakeHost {
+
+    private final Map<String, Object> objects = new HashMap<>();
+    private final Map<String, Object> values = new HashMap<>();
+    private final Map<String, Object> callbacks = new LinkedHashMap<>();
+    private final Map<String, OscMethodCallback> commands = new LinkedHashMap<>();
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+    private final ControllerHost host;
+    private long flushRequests = 0;
+    private long midiSent = 0;
+
+    public FakeHost() {
+        host = proxy(ControllerHost.class, "host");
+    }
+
+    public ControllerHost getHost() {
+        return host;
+    }
+
+    // Callback registered by the call with the given path, such as
+    // host.createMainTrackBank(8,0,8).getItemAt(3).volume().value().addValueObserver(_)
+    public <T> T callback(String path, Class<T> type) {
+        Object callback = callbacks.get(path);
+        if (callback == null) {
+            throw new IllegalArgumentException("No callback registered at " + path);
+        }
+        return type.cast(callback);
+    }
+
+    public Set<String> callbackPaths() {
+        return callbacks.keySet();
+    }
+
+    // Result of a call returning a value, such as a preference; calls not set here return a default
+    public void setValue(String path, Object value) {
+        values.put(path, value);
+    }
+
+    // Calls an OSC method registered in any address space, as if a message had arrived
+    public void dispatch(String address, Object... args) {
+        OscMethodCallback command = commands.get(address);
+        if (command == null) {
+            throw new IllegalArgumentException("No OSC method registered at " + address);
+        }
+        OscMessage message = proxy(OscMessage.class, "message(" + address + ")");
+        values.put("message(" + address + ").getAddressPattern()", address);
+        values.put("message(" + address + ").getArguments()", List.of(args));
+        command.handle(null, message);
+    }
+
+    public void runTasks() {
+        for (int n = tasks.size(); n > 0; n--) {
+            tasks.poll().run();
+        }
+    }
+
+    public long getFlushRequests() {
+        return flushRequests;
+    }
+
+    public long getMidiSent() {
+        return midiSent;
+    }
+
+    private <T> T proxy(Class<T> type, String path) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, new Handler(type, path)));
+    }
+
+    private final class Handler implements InvocationHandler {
+        private final Class<?> type;
+        private final String path;
+
+        private Handler(Class<?> type, String path) {
+            this.type = type;
+            this.path = path;
+        }
+
+        @Override
+        public Object invoke(Object self, Method method, Object[] args) {
+            String name = method.getName();
+            if (method.getDeclaringClass() == Object.class) {
+                return switch (name) {
+                    case "equals" -> self == args[0];
+                    case "hashCode" -> System.identityHashCode(self);
+                    default -> path;
+                };
+            }
+            // Calls made on hot paths, answered without building a call path
+            switch (name) {
+                case "scheduleTask" -> {
+                    tasks.add((Runnable) args[0]);
+                    return null;
+                }
+                case "requestFlush" -> {
+                    flushRequests++;
+                    return null;
+                }
+                case "sendMidi", "sendSysex" -> {
+                    midiSent++;
+                    return null;
+                }
+                default -> {
+                }
+            }
+            String call = path + "." + name + "(" + describe(args) + ")";
+            Object callback = callbackArg(args);
+            if (callback != null) {
+                callbacks.put(call, callback);
+                if (callback instanceof OscMethodCallback command && args[0] instanceof String address) {
+                    commands.put(address, command);
+                }
+            }
+            if (name.equals("setIsSubscribed") && Boolean.TRUE.equals(args[0])) {
+                report(callbacks.get(path + ".addValueObserver(_)"));
+            }
+            if (name.equals("getNumberSetting") || name.equals("getStringSetting")) {
+                // The initial value is the last argument
+                Object initial = args[args.length - 1];
+                values.put(call + ".get()", initial);
+                values.put(call + ".getRaw()", initial);
+            }
+            if (values.containsKey(call)) {
+                return values.get(call);
+            }
+            Class<?> returnType = resolve(method.getGenericReturnType(), type);
+            if (returnType == void.class) {
+                return null;
+            }
+            if (returnType.isInterface()) {
+                return objects.computeIfAbsent(call, c -> proxy(returnType, c));
+            }
+            return defaultValue(returnType);
+        }
+    }
+
+    // Calls a value observer with a default value
+    private static void report(Object callback) {
+        if (callback == null) {
+            return;
+        }
+        for (Method method : callback.getClass().getInterfaces()[0].getMethods()) {
+            if (Modifier.isAbstract(method.getModifiers())) {
+                Object[] args = new Object[method.getParameterCount()];
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = defaultValue(method.getParameterTypes()[i]);
+                }
+                try {
+                    method.invoke(callback, args);
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException(e);
+                }
+                return;
+            }
+        }
+    }
+
+    // Only callbacks are objects other than proxies, strings, boxed primitives and enums
+    private static Object callbackArg(Object[] args) {
+        if (args == null) {
+            return null;
+        }
+        for (Object arg : args) {
+            if (arg != null && !isValue(arg) && !Proxy.isProxyClass(arg.getClass())) {
+                return arg;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isValue(Object arg) {
+        return arg instanceof String || arg instanceof Number || arg instanceof Boolean || arg instanceof Character
+                || arg instanceof Enum<?> || arg.getClass().isArray();
+    }
+
+    private static String describe(Object[] args) {
+        if (args == null) {
+            return "";
+        }
+        List<String> parts = new ArrayList<>(args.length);
+        for (Object arg : args) {
+            parts.add(arg != null && isValue(arg) && !arg.getClass().isArray() ? arg.toString() : "_");
+        }
+        return String.join(",", parts);
+    }
+
+    // Resolves type variables such as Bank<T>.getItemAt against the proxied interface, e.g. to Track for TrackBank
+    private static Class<?> resolve(Type type, Class<?> owner) {
+        if (type instanceof Class<?> c) {
+            return c;
+        }
+        if (type instanceof ParameterizedType p) {
+            return (Class<?>) p.getRawType();
+        }
+        if (type instanceof TypeVariable<?> variable) {
+            Type bound = bind(variable, owner);
+            if (bound != null) {
+                return resolve(bound, owner);
+            }
+            return resolve(variable.getBounds()[0], owner);
+        }
+        return Object.class;
+    }
+
+    // The type an ancestor's parameter is bound to, as seen from owner
+    private static Type bind(TypeVariable<?> variable, Class<?> owner) {
+        for (Type parent : owner.getGenericInterfaces()) {
+            Class<?> raw = parent instanceof ParameterizedType p ? (Class<?>) p.getRawType() : (Class<?>) parent;
+            Type bound = raw == variable.getGenericDeclaration() ? variable : bind(variable, raw);
+            if (bound == null) {
+                continue;
+            }
+            // Still one of parent's own parameters, e.g. ChannelBank<T> extends Bank<T>: take owner's argument
+            if (bound instanceof TypeVariable<?> v && v.getGenericDeclaration() == raw && parent instanceof ParameterizedType p) {
+                TypeVariable<?>[] params = raw.getTypeParameters();
+                for (int i = 0; i < params.length; i++) {
+                    if (params[i].getName().equals(v.getName())) {
+                        return p.getActualTypeArguments()[i];
+                    }
+                }
+            }
+            return bound;
+        }
+        return null;
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class || type == Boolean.class) {
+            return false;
+        }
+        if (type == int.class || type == Integer.class) {
+            return 0;
+        }
+        if (type == long.class || type == Long.class) {
+            return 0L;
+        }
+        if (type == double.class || type == Double.class) {
+            return 0.0;
+        }
+        if (type == float.class || type == Float.class) {
+            return 0.0f;
+        }
+        if (type == short.class || type == Short.class) {
+            return (short) 0;
+        }
+        if (type == byte.class || type == Byte.class) {
+            return (byte) 0;
+        }
+        if (type == char.class || type == Character.class) {
+            return (char) 0;
+        }
+        if (type == String.class) {
+            return "";
+        }
+        if (type.isArray()) {
+            return Array.newInstance(type.getComponentType(), 0);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,100 @@
+package com.github.unthingable.harness.bench;
+
+import com.github.unthingable.harness.ClientManager;
+import com.github.unthingable.harness.Metrics;
+import com.github.unthingable.harness.SendPipeline;
+import java.io.IOException;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+// The harness as wired in HarnessExtension.init, on a fake host, with clients whose output is
+// captured in memory. Subclasses add the observers or proxies they measure in createSources.
+@State(Scope.Thread)
+public abstract class HarnessFixture {
+
+    public static final int FIRST_PORT = 9001;
+
+    @Param({"1", "4", "16"})
+    public int clients;
+
+    protected FakeHost fakeHost;
+    protected SendPipeline sendPipeline;
+    protected ClientManager clientManager;
+    protected CapturingConnection[] connections;
+    private long[] awaited;
+
+    @Setup(Level.Trial)
+    public void setUpHarness() throws IOException {
+        fakeHost = new FakeHost();
+        sendPipeline = new SendPipeline();
+        sendPipeline.start();
+        clientManager = new ClientManager(sendPipeline, fakeHost.getHost()::requestFlush, fakeHost.getHost()::scheduleTask,
+                new Metrics());
+        createSources();
+        connections = new CapturingConnection[clients];
+        awaited = new long[clients];
+        for (int i = 0; i < clients; i++) {
+            connections[i] = new CapturingConnection(FIRST_PORT + i);
+            clientManager.register(FIRST_PORT + i, connections[i]);
+        }
+        configureClients();
+        // Observers that just became active send everything once; keep that out of the measurement
+        clientManager.flush();
+        awaitQuiet();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownHarness() {
+        sendPipeline.stop();
+    }
+
+    protected abstract void createSources();
+
+    // Per-client settings, such as subscriptions, after all clients are connected
+    protected void configureClients() {
+    }
+
+    // Notes the packets sent so far, for a following awaitSent
+    protected void markSent() {
+        for (int i = 0; i < clients; i++) {
+            awaited[i] = connections[i].getPackets() + 1;
+        }
+    }
+
+    // Spins until every client has been sent at least one packet since markSent
+    protected void awaitSent() {
+        for (int i = 0; i < clients; i++) {
+            while (connections[i].getPackets() < awaited[i]) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    // Waits until the sender thread has stopped sending
+    private void awaitQuiet() {
+        long before;
+        long after = totalPackets();
+        do {
+            before = after;
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            after = totalPackets();
+        } while (after != before);
+    }
+
+    private long totalPackets() {
+        long total = 0;
+        for (CapturingConnection connection : connections) {
+            total += connection.getPackets();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.unthingable.harness.bench;
+
+import com.bitwig.extension.callback.ShortMidiMessageReceivedCallback;
+import com.bitwig.extension.controller.api.ControllerHost;
+import com.github.unthingable.harness.MidiProxy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// MIDI from the extension under test forwarded to the clients, as single /midi/in messages or as
+// /midi/batch/in. Each operation is one MIDI message; a host tick delivers a burst of them.
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MidiProxyBenchmark extends HarnessFixture {
+
+    private static final int BURST = 16;
+
+    @Param({"single", "batch"})
+    public String encoding;
+
+    private ShortMidiMessageReceivedCallback midiIn;
+    private int step = 0;
+
+    @Override
+    protected void createSources() {
+        ControllerHost host = fakeHost.getHost();
+        MidiProxy midiProxy = new MidiProxy(host, host.getMidiInPort(0), host.getMidiOutPort(0), clientManager);
+        clientManager.addFlushProvider(midiProxy::flushMidiBatch);
+        midiIn = fakeHost.callback("host.getMidiInPort(0).setMidiCallback(_)", ShortMidiMessageReceivedCallback.class);
+    }
+
+    @Override
+    protected void configureClients() {
+        if (encoding.equals("batch")) {
+            for (int i = 0; i < clients; i++) {
+                clientManager.unsubscribe(FIRST_PORT + i, "/midi/in");
+                clientManager.subscribe(FIRST_PORT + i, "/midi/batch/in");
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public boolean burst() {
+        for (int i = 0; i < BURST; i++) {
+            step++;
+            midiIn.midiReceived(0x90, step & 0x7F, 100);
+        }
+        return clientManager.flush();
+    }
+}
@@ -0,0 +1,69 @@
+package com.github.unthingable.harness.bench;
+
+import com.bitwig.extension.callback.BooleanValueChangedCallback;
+import com.bitwig.extension.callback.DoubleValueChangedCallback;
+import com.bitwig.extension.callback.IntegerValueChangedCallback;
+import com.bitwig.extension.callback.StringValueChangedCallback;
+import com.bitwig.extension.controller.api.TrackBank;
+import com.github.unthingable.harness.observers.TrackBankObserver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Host callbacks into TrackBankObserver, followed by the flush that broadcasts the dirty tracks
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrackBankBenchmark extends HarnessFixture {
+
+    private static final int BANK_SIZE = 8;
+    private static final String BANK = "host.createMainTrackBank(" + BANK_SIZE + ",0,0)";
+
+    private final StringValueChangedCallback[] names = new StringValueChangedCallback[BANK_SIZE];
+    private final IntegerValueChangedCallback[] positions = new IntegerValueChangedCallback[BANK_SIZE];
+    private final BooleanValueChangedCallback[] mutes = new BooleanValueChangedCallback[BANK_SIZE];
+    private final DoubleValueChangedCallback[] volumes = new DoubleValueChangedCallback[BANK_SIZE];
+    private int step = 0;
+
+    @Override
+    protected void createSources() {
+        TrackBank trackBank = fakeHost.getHost().createMainTrackBank(BANK_SIZE, 0, 0);
+        clientManager.addObserver(new TrackBankObserver(trackBank, clientManager, BANK_SIZE));
+        for (int i = 0; i < BANK_SIZE; i++) {
+            String track = BANK + ".getItemAt(" + i + ")";
+            names[i] = fakeHost.callback(track + ".name().addValueObserver(_)", StringValueChangedCallback.class);
+            positions[i] = fakeHost.callback(track + ".position().addValueObserver(_)", IntegerValueChangedCallback.class);
+            mutes[i] = fakeHost.callback(track + ".mute().addValueObserver(_)", BooleanValueChangedCallback.class);
+            volumes[i] = fakeHost.callback(track + ".volume().value().addValueObserver(_)", DoubleValueChangedCallback.class);
+        }
+    }
+
+    // Automation on one track: one value changes per host tick
+    @Benchmark
+    public boolean volumeChange() {
+        step++;
+        volumes[step % BANK_SIZE].valueChanged((step & 1023) / 1024.0);
+        return clientManager.flush();
+    }
+
+    // Scrolling the bank: several values of every track change within one tick
+    @Benchmark
+    public boolean bankScroll() {
+        step++;
+        for (int i = 0; i < BANK_SIZE; i++) {
+            names[i].valueChanged((step & 1) == 0 ? "Drums" : "Bass");
+            positions[i].valueChanged(step + i);
+            mutes[i].valueChanged((step & 2) == 0);
+            volumes[i].valueChanged((step & 1023) / 1024.0);
+        }
+        return clientManager.flush();
+    }
+}
@@ -0,0 +1,136 @@
+package com.github.unthingable.harness;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Pending /await predicates, indexed by entity key so that a state update only checks the predicates watching it
+public class AwaitRegistry {
+
+    private final ClientManager clientManager;
+    private final Map<Object, List<Await>> byKey = new HashMap<>();
+
+    public AwaitRegistry(ClientManager clientManager) {
+        this.clientManager = clientManager;
+    }
+
+    public boolean isEmpty() {
+        return byKey.isEmpty();
+    }
+
+    // Returns the pending predicate, or null if it was already satisfied by the current state.
+    // A group activated for the predicate only broadcasts, and so only answers it, once the host has reported it.
+    public Await add(int port, int id, StateSchema.Path path, Op op, String value) {
+        Await await = new Await(port, id, path, op, value);
+        Object[] current = clientManager.query(path.address(), path.key());
+        if (current != null && await.test(current)) {
+            clientManager.reply(port, "/await/ok", id, String.valueOf(current[path.argIndex()]));
+            return null;
+        }
+        if (current != null) {
+            await.lastValue = String.valueOf(current[path.argIndex()]);
+        }
+        byKey.computeIfAbsent(path.key(), k -> new ArrayList<>()).add(await);
+        clientManager.retain(path.address());
+        return await;
+    }
+
+    public void onState(Object key, Object[] args) {
+        List<Await> awaits = byKey.get(key);
+        if (awaits == null) {
+            return;
+        }
+        for (Await await : List.copyOf(awaits)) {
+            await.lastValue = String.valueOf(args[await.path.argIndex()]);
+            if (await.test(args)) {
+                remove(await);
+                clientManager.reply(await.port, "/await/ok", await.id, await.lastValue);
+            }
+        }
+    }
+
+    public void expire(Await await) {
+        if (remove(await)) {
+            clientManager.reply(await.port, "/await/timeout", await.id, await.lastValue);
+        }
+    }
+
+    private boolean remove(Await await) {
+        List<Await> awaits = byKey.get(await.path.key());
+        if (awaits == null || !awaits.remove(await)) {
+            return false;
+        }
+        if (awaits.isEmpty()) {
+            byKey.remove(await.path.key());
+        }
+        clientManager.release(await.path.address());
+        return true;
+    }
+
+    public enum Op {
+        EQ("=="), NE("!="), LT("<"), LE("<="), GT(">"), GE(">=");
+
+        private final String symbol;
+
+        Op(String symbol) {
+            this.symbol = symbol;
+        }
+
+        public static Op parse(String symbol) {
+            for (Op op : values()) {
+                if (op.symbol.equals(symbol)) {
+                    return op;
+                }
+            }
+            return null;
+        }
+
+        private boolean test(int comparison) {
+            return switch (this) {
+                case EQ -> comparison == 0;
+                case NE -> comparison != 0;
+                case LT -> comparison < 0;
+                case LE -> comparison <= 0;
+                case GT -> comparison > 0;
+                case GE -> comparison >= 0;
+            };
+        }
+    }
+
+    public static final class Await {
+        private final int port;
+        private final int id;
+        private final StateSchema.Path path;
+        private final Op op;
+        private final String value;
+        private final Double number;
+        private String lastValue = "";
+
+        private Await(int port, int id, StateSchema.Path path, Op op, String value) {
+            this.port = port;
+            this.id = id;
+            this.path = path;
+            this.op = op;
+            this.value = value;
+            this.number = parseNumber(value);
+        }
+
+        // Numbers compare numerically, anything else as strings
+        private boolean test(Object[] args) {
+            Object actual = args[path.argIndex()];
+            if (number != null && actual instanceof Number n) {
+                return op.test(Double.compare(n.doubleValue(), number));
+            }
+            return op.test(String.valueOf(actual).compareTo(value));
+        }
+
+        private static Double parseNumber(String s) {
+            try {
+                return Double.valueOf(s);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.github.unthingable.harness;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Packs encoded messages into as few bundles of at most maxSize bytes as possible
+public class BundleBuilder {
+
+    private final List<byte[]> result = new ArrayList<>();
+    private final ByteBuffer bundle;
+
+    public BundleBuilder(int maxSize) {
+        bundle = ByteBuffer.allocate(maxSize);
+        OscEncoder.writeBundleHeader(bundle);
+    }
+
+    public void add(byte[] message) {
+        if (bundle.position() > OscEncoder.BUNDLE_HEADER_SIZE && bundle.remaining() < 4 + message.length) {
+            result.add(Arrays.copyOf(bundle.array(), bundle.position()));
+            bundle.clear();
+            OscEncoder.writeBundleHeader(bundle);
+        }
+        if (bundle.remaining() < 4 + message.length) {
+            // Larger than a bundle on its own, send it bare
+            result.add(message);
+        } else {
+            OscEncoder.writeBundleElement(bundle, message);
+        }
+    }
+
+    public List<byte[]> finish() {
+        if (bundle.position() > OscEncoder.BUNDLE_HEADER_SIZE) {
+            result.add(Arrays.copyOf(bundle.array(), bundle.position()));
+            bundle.clear();
+            OscEncoder.writeBundleHeader(bundle);
+        }
+        return result;
+    }
+}
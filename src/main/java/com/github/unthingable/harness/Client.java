@@ -0,0 +1,85 @@
+package com.github.unthingable.harness;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+// A registered driver: its reply port, routing bit, send queue, subscribed address prefixes and last heartbeat
+public class Client {
+
+    private final int port;
+    private final int index;
+    private final ClientQueue queue;
+    private final Set<String> subscriptions = new LinkedHashSet<>();
+    private final ClientThrottle throttle = new ClientThrottle();
+    // Arguments of the state last queued for this client, per entity key
+    private final Map<Object, Object[]> shadow = new HashMap<>();
+    private boolean deltas = false;
+    private boolean defaultSubscriptions = true;
+    // A snapshot was asked for before the observers it needs had current values; sent from a later flush
+    private boolean awaitingSnapshot = false;
+    private long lastSeen = System.nanoTime();
+
+    public Client(int port, int index, ClientQueue queue) {
+        this.port = port;
+        this.index = index;
+        this.queue = queue;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public ClientQueue getQueue() {
+        return queue;
+    }
+
+    public Set<String> getSubscriptions() {
+        return subscriptions;
+    }
+
+    public ClientThrottle getThrottle() {
+        return throttle;
+    }
+
+    public Map<Object, Object[]> getShadow() {
+        return shadow;
+    }
+
+    public boolean wantsDeltas() {
+        return deltas;
+    }
+
+    public void setDeltas(boolean deltas) {
+        this.deltas = deltas;
+    }
+
+    public boolean hasDefaultSubscriptions() {
+        return defaultSubscriptions;
+    }
+
+    public void setDefaultSubscriptions(boolean defaultSubscriptions) {
+        this.defaultSubscriptions = defaultSubscriptions;
+    }
+
+    public boolean isAwaitingSnapshot() {
+        return awaitingSnapshot;
+    }
+
+    public void setAwaitingSnapshot(boolean awaitingSnapshot) {
+        this.awaitingSnapshot = awaitingSnapshot;
+    }
+
+    public long getLastSeen() {
+        return lastSeen;
+    }
+
+    public void touch() {
+        lastSeen = System.nanoTime();
+    }
+}
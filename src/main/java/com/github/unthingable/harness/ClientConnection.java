@@ -0,0 +1,69 @@
+package com.github.unthingable.harness;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+// UDP connection to a client; stream transports override the lifecycle and flow control hooks
+public class ClientConnection {
+
+    private final DatagramChannel channel;
+    private final SocketAddress address;
+    private final int port;
+
+    public ClientConnection(DatagramChannel channel, InetSocketAddress address) {
+        this(channel, address, address.getPort());
+    }
+
+    // The port identifies the client, also on transports whose address has none
+    protected ClientConnection(DatagramChannel channel, SocketAddress address, int port) {
+        this.channel = channel;
+        this.address = address;
+        this.port = port;
+    }
+
+    public SocketAddress getAddress() {
+        return address;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    // Same transport to the same address, so an existing connection can be kept
+    public boolean sameEndpoint(ClientConnection other) {
+        return getClass() == other.getClass() && address.equals(other.address);
+    }
+
+    // Whether isClosed reports a driver that went away; others rely on the heartbeat timeout
+    public boolean detectsClose() {
+        return false;
+    }
+
+    // Called when the connection becomes a client's, before anything is sent
+    public void open() throws IOException {
+    }
+
+    public void close() {
+    }
+
+    // Closed from the other end; the client should be unregistered
+    public boolean isClosed() {
+        return false;
+    }
+
+    // Whether the sender may hand over another packet now; when this turns true again after
+    // being false, the listener is called
+    public boolean isWritable() {
+        return true;
+    }
+
+    public void setWritableListener(Runnable listener) {
+    }
+
+    public void send(ByteBuffer packet) throws IOException {
+        channel.send(packet, address);
+    }
+}
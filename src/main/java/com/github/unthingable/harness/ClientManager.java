@@ -1,67 +1,778 @@
 package com.github.unthingable.harness;
 
-import com.bitwig.extension.api.opensoundcontrol.OscConnection;
+import com.github.unthingable.harness.jfr.BroadcastEvent;
+import com.github.unthingable.harness.jfr.ObserverFlushEvent;
+import com.github.unthingable.harness.observers.StateObserver;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 public class ClientManager {
 
-    private final Map<Integer, OscConnection> connectionPool;
-    private final Set<Integer> activePorts = new HashSet<>();
-    private final List<Consumer<OscConnection>> snapshotProviders = new ArrayList<>();
+    // Queued events beyond this count as overflowed; state is bounded by the number of entities
+    public static final int QUEUE_CAPACITY = 1024;
+    // Queued events at which a stream client that stopped reading is disconnected. Stream clients are never
+    // timed out, so without this their queue would grow for as long as the connection stays open.
+    public static final int STREAM_STALL_LIMIT = 16 * QUEUE_CAPACITY;
+    public static final int REPLAY_CAPACITY = 1024;
+    // Everything except the opt-in encodings, such as /state/clip_matrix
+    public static final List<String> DEFAULT_SUBSCRIPTIONS = List.of(
+            "/state/project", "/state/transport", "/state/cursor_track", "/state/device",
+            "/state/track", "/state/track_bank", "/state/remote_control", "/state/clip",
+            "/state/seq", "/midi/in", "/midi/sysex/in");
+    public static final String SEQUENCE_MARKER = "/state/seq";
+    // Scheduled tasks may run a little early; settle checks wait this much past the settle timeout
+    private static final long SETTLE_CHECK_MARGIN_MS = 50;
 
-    public ClientManager(Map<Integer, OscConnection> connectionPool) {
-        this.connectionPool = connectionPool;
+    private final SendPipeline sendPipeline;
+    private final Runnable flushRequester;
+    // Runs a task on the host thread after a delay in milliseconds
+    private final BiConsumer<Runnable, Long> scheduler;
+    private final Metrics metrics;
+    private final Map<Integer, Client> activeClients = new LinkedHashMap<>();
+    private final Client[] clientsByIndex = new Client[SubscriptionTrie.MAX_CLIENTS];
+    private final SubscriptionTrie subscriptions = new SubscriptionTrie();
+    private final List<Consumer<OscSink>> snapshotProviders = new ArrayList<>();
+    private final List<Runnable> flushProviders = new ArrayList<>();
+    private final List<StateObserver> observers = new ArrayList<>();
+    private final SnapshotCache snapshotCache = new SnapshotCache(snapshotProviders);
+    private final Map<String, Integer> retainedAddresses = new HashMap<>();
+    private final AwaitRegistry awaits = new AwaitRegistry(this);
+    // /state/get queries waiting for the groups they activated to settle, keeping those groups retained
+    private final List<PendingGet> pendingGets = new ArrayList<>();
+    // Default throttling of continuous fields, by message address
+    private final Map<String, Throttle> throttles = new HashMap<>();
+    private long stateBroadcasts = 0;
+    // Some active observer group has not heard from the host since it was activated
+    private boolean settling = false;
+
+    public ClientManager(SendPipeline sendPipeline, Runnable flushRequester, BiConsumer<Runnable, Long> scheduler,
+                         Metrics metrics) {
+        this.sendPipeline = sendPipeline;
+        this.flushRequester = flushRequester;
+        this.scheduler = scheduler;
+        this.metrics = metrics;
     }
 
-    public boolean register(int port) {
-        OscConnection conn = connectionPool.get(port);
-        if (conn == null) {
+    // The port identifies the client; connecting it from another address or over another transport
+    // replaces the old client. Returns false if all client slots are taken.
+    public boolean register(int port, ClientConnection conn) throws IOException {
+        Client client = activeClients.get(port);
+        if (client != null) {
+            ClientConnection current = client.getQueue().getConnection();
+            if (!current.sameEndpoint(conn) || current.isClosed()) {
+                unregister(port);
+                client = null;
+            }
+        }
+        if (client == null) {
+            int index = freeIndex();
+            if (index < 0) {
+                return false;
+            }
+            conn.open();
+            ClientQueue queue = new ClientQueue(conn, QUEUE_CAPACITY,
+                    conn.detectsClose() ? STREAM_STALL_LIMIT : 0, REPLAY_CAPACITY);
+            conn.setWritableListener(() -> sendPipeline.wake(queue));
+            client = new Client(port, index, queue);
+            activeClients.put(port, client);
+            clientsByIndex[index] = client;
+            for (String prefix : DEFAULT_SUBSCRIPTIONS) {
+                addSubscription(client, prefix);
+            }
+            updateActivations();
+            sendSnapshot(client);
+        } else {
+            // Still registered, so the driver already holds the state this client was sent
+            sendChanges(client);
+        }
+        client.touch();
+        return true;
+    }
+
+    // Heartbeat; returns false if the client is not connected, e.g. after it was evicted
+    public boolean touch(int port) {
+        Client client = activeClients.get(port);
+        if (client == null) {
             return false;
         }
-        activePorts.add(port);
-        sendSnapshot(conn);
+        client.touch();
         return true;
     }
 
+    // Unregisters clients without a heartbeat for longer than the timeout and returns their ports.
+    // Clients on a transport that notices the driver going away are left to evictClosed.
+    public List<Integer> evictIdle(long timeoutMs) {
+        long now = System.nanoTime();
+        List<Integer> idle = new ArrayList<>();
+        for (Client client : activeClients.values()) {
+            if (!client.getQueue().getConnection().detectsClose() && now - client.getLastSeen() > timeoutMs * 1_000_000) {
+                idle.add(client.getPort());
+            }
+        }
+        for (int port : idle) {
+            unregister(port);
+        }
+        return idle;
+    }
+
+    // Unregisters clients whose event backlog reached the stall limit and returns their ports
+    public List<Integer> evictStalled() {
+        List<Integer> stalled = new ArrayList<>();
+        for (Client client : activeClients.values()) {
+            if (client.getQueue().isStalled()) {
+                stalled.add(client.getPort());
+            }
+        }
+        for (int port : stalled) {
+            unregister(port);
+        }
+        return stalled;
+    }
+
+    // Unregisters clients whose connection the driver closed and returns their ports
+    public List<Integer> evictClosed() {
+        List<Integer> closed = new ArrayList<>();
+        for (Client client : activeClients.values()) {
+            if (client.getQueue().getConnection().isClosed()) {
+                closed.add(client.getPort());
+            }
+        }
+        for (int port : closed) {
+            unregister(port);
+        }
+        return closed;
+    }
+
     public void unregister(int port) {
-        activePorts.remove(port);
+        Client client = activeClients.remove(port);
+        if (client != null) {
+            clientsByIndex[client.getIndex()] = null;
+            subscriptions.removeClient(client.getIndex());
+            client.getQueue().clear();
+            client.getQueue().getConnection().close();
+            updateActivations();
+        }
+    }
+
+    public String describeStats(int port) {
+        Client client = activeClients.get(port);
+        return client != null ? client.getQueue().describeStats() : "not connected";
+    }
+
+    // The first explicit subscription replaces the default set
+    public boolean subscribe(int port, String prefix) {
+        Client client = activeClients.get(port);
+        String normalized = SubscriptionTrie.normalize(prefix);
+        if (client == null || normalized == null) {
+            return false;
+        }
+        if (client.hasDefaultSubscriptions()) {
+            client.setDefaultSubscriptions(false);
+            for (String defaultPrefix : DEFAULT_SUBSCRIPTIONS) {
+                removeSubscription(client, defaultPrefix);
+            }
+        }
+        addSubscription(client, normalized);
+        updateActivations();
+        return true;
+    }
+
+    public boolean unsubscribe(int port, String prefix) {
+        Client client = activeClients.get(port);
+        String normalized = SubscriptionTrie.normalize(prefix);
+        if (client == null || normalized == null) {
+            return false;
+        }
+        client.setDefaultSubscriptions(false);
+        removeSubscription(client, normalized);
+        updateActivations();
+        return true;
+    }
+
+    public void setDefaultThrottle(String address, Throttle throttle) {
+        throttles.put(address, throttle);
+    }
+
+    // Overrides the default throttling for addresses under the prefix; a negative deadband restores the default
+    public boolean throttle(int port, String prefix, double deadband, double maxRateHz) {
+        Client client = activeClients.get(port);
+        String normalized = SubscriptionTrie.normalize(prefix);
+        if (client == null || normalized == null) {
+            return false;
+        }
+        if (deadband < 0) {
+            client.getThrottle().removeOverride(normalized);
+        } else {
+            client.getThrottle().setOverride(normalized, Throttle.of(deadband, maxRateHz));
+        }
+        return true;
+    }
+
+    // Field-level deltas for state messages: changed fields go out as <address>/<field> messages
+    public boolean setDeltas(int port, boolean enabled) {
+        Client client = activeClients.get(port);
+        if (client == null) {
+            return false;
+        }
+        client.setDeltas(enabled);
+        return true;
     }
 
     public void broadcast(String address, Object... args) {
-        for (int port : activePorts) {
-            OscConnection conn = connectionPool.get(port);
-            if (conn != null) {
-                try {
-                    conn.sendMessage(address, args);
-                } catch (IOException e) {
-                    // UDP send failure — log and continue
+        broadcast(address, StateSchema.keyOf(address, args), null, args);
+    }
+
+    // State from a template: same as broadcast(address, args), with the key and encoding prepared by the template
+    public void broadcast(StateTemplate template, Object... args) {
+        broadcast(template.getAddress(), template.keyOf(args), template, args);
+    }
+
+    private void broadcast(String address, Object key, StateTemplate template, Object[] args) {
+        boolean state = StateSchema.isState(address);
+        if (state) {
+            stateBroadcasts++;
+            snapshotCache.invalidate();
+            if (!awaits.isEmpty()) {
+                awaits.onState(key, args);
+            }
+        }
+        long mask = subscriptions.route(address);
+        if (mask == 0) {
+            return;
+        }
+        BroadcastEvent event = new BroadcastEvent();
+        event.begin();
+
+        if (!state) {
+            // Encode once, queue the same bytes for every subscribed client
+            OutboundMessage message = OutboundMessage.unkeyed(OscEncoder.encodeMessage(address, args));
+            int recipients = Long.bitCount(mask);
+            while (mask != 0) {
+                int index = Long.numberOfTrailingZeros(mask);
+                mask &= mask - 1;
+                sendPipeline.enqueue(clientsByIndex[index].getQueue(), message);
+            }
+            metrics.recordMessage(address, recipients, (long) recipients * message.getData().length, 0);
+            commit(event, address, recipients, (long) recipients * message.getData().length);
+            return;
+        }
+
+        // Encoded once the first client needs it, so updates every client already has cost no encoding
+        OutboundMessage message = null;
+        int continuous = StateSchema.continuousField(address);
+        Throttle defaultThrottle = continuous >= 0 ? throttles.getOrDefault(address, Throttle.NONE) : null;
+        long now = continuous >= 0 ? System.nanoTime() : 0;
+        // Per-field messages, encoded on first use and shared by all clients that want deltas
+        OutboundMessage[] fieldMessages = null;
+        int queued = 0;
+        long queuedBytes = 0;
+        int suppressed = 0;
+        while (mask != 0) {
+            int index = Long.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+            Client client = clientsByIndex[index];
+            if (client.isAwaitingSnapshot()) {
+                // The snapshot it is waiting for will carry the latest state
+                continue;
+            }
+            Object[] previous = client.getShadow().get(key);
+            if (Arrays.deepEquals(previous, args)) {
+                // Nothing new for this client
+                if (continuous >= 0) {
+                    client.getThrottle().cancel(key);
+                }
+                suppressed++;
+                continue;
+            }
+            if (continuous >= 0) {
+                Throttle throttle = client.getThrottle().resolve(address, defaultThrottle);
+                if (!throttle.isNone() && message == null) {
+                    message = stateMessage(address, key, template, args);
+                }
+                if (!throttle.isNone() && !client.getThrottle().admit(key, args, continuous, throttle, message, now)) {
+                    suppressed++;
+                    continue;
+                }
+            }
+            client.getShadow().put(key, args);
+            queued++;
+            if (client.wantsDeltas() && previous != null) {
+                if (fieldMessages == null) {
+                    fieldMessages = new OutboundMessage[args.length];
                 }
+                long deltaBytes = enqueueDelta(client, address, key, previous, args, fieldMessages);
+                if (deltaBytes > 0) {
+                    queuedBytes += deltaBytes;
+                    continue;
+                }
+            }
+            if (message == null) {
+                message = stateMessage(address, key, template, args);
+            }
+            sendPipeline.enqueue(client.getQueue(), message);
+            queuedBytes += message.getData().length;
+        }
+        metrics.recordMessage(address, queued, queuedBytes, suppressed);
+        commit(event, address, queued, queuedBytes);
+    }
+
+    private static OutboundMessage stateMessage(String address, Object key, StateTemplate template, Object[] args) {
+        byte[] data = template != null ? template.encode(args) : OscEncoder.encodeSequencedMessage(address, args);
+        return new OutboundMessage(key, data, true);
+    }
+
+    // Event from a template: the arguments set on it are copied once into a message shared by all
+    // subscribed clients, which the sender thread returns to the template's pool
+    public void broadcast(OscTemplate template) {
+        String address = template.getAddress();
+        long mask = subscriptions.route(address);
+        if (mask == 0) {
+            return;
+        }
+        BroadcastEvent event = new BroadcastEvent();
+        event.begin();
+        int recipients = Long.bitCount(mask);
+        OutboundMessage message = template.take(recipients);
+        while (mask != 0) {
+            int index = Long.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+            sendPipeline.enqueue(clientsByIndex[index].getQueue(), message);
+        }
+        metrics.recordMessage(address, recipients, (long) recipients * template.size(), 0);
+        commit(event, address, recipients, (long) recipients * template.size());
+    }
+
+    private static void commit(BroadcastEvent event, String address, int clients, long bytes) {
+        if (event.shouldCommit()) {
+            event.address = address;
+            event.clients = clients;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    // Queues only the changed fields, unless that would take more than half the fields of the full message.
+    // Returns the bytes queued, or 0 if the full message should be sent instead.
+    private long enqueueDelta(Client client, String address, Object key, Object[] previous, Object[] args,
+                              OutboundMessage[] fieldMessages) {
+        int arity = StateSchema.keyArity(address);
+        int changed = 0;
+        for (int i = arity; i < args.length; i++) {
+            if (!Objects.deepEquals(previous[i], args[i])) {
+                changed++;
+            }
+        }
+        if (changed * 2 > args.length - arity) {
+            return 0;
+        }
+        long bytes = 0;
+        for (int i = arity; i < args.length; i++) {
+            if (Objects.deepEquals(previous[i], args[i])) {
+                continue;
+            }
+            if (fieldMessages[i] == null) {
+                String fieldAddress = address + "/" + StateSchema.fieldName(address, i);
+                Object[] fieldArgs = Arrays.copyOf(args, arity + 1);
+                fieldArgs[arity] = args[i];
+                // Keyed under the entity, so a later full message for it supersedes the delta in the queue
+                fieldMessages[i] = new OutboundMessage(StateSchema.fieldKeyOf(key, i),
+                        OscEncoder.encodeSequencedMessage(fieldAddress, fieldArgs), true);
+            }
+            sendPipeline.enqueue(client.getQueue(), fieldMessages[i]);
+            bytes += fieldMessages[i].getData().length;
+        }
+        return bytes;
+    }
+
+    // Whether any client subscribes to the address, to skip preparing messages nobody receives
+    public boolean isRouted(String address) {
+        return subscriptions.route(address) != 0;
+    }
+
+    // Whether a state message would reach a client or an await, to skip building ones nobody uses
+    public boolean isWanted(String address) {
+        return isRouted(address)
+                || (!retainedAddresses.isEmpty() && SubscriptionTrie.covers(retainedAddresses.keySet(), address));
+    }
+
+    // Sent to one client regardless of its subscriptions
+    public void reply(int port, String address, Object... args) {
+        Client client = activeClients.get(port);
+        if (client != null) {
+            BroadcastEvent event = new BroadcastEvent();
+            event.begin();
+            byte[] data = OscEncoder.encodeMessage(address, args);
+            sendPipeline.enqueue(client.getQueue(), OutboundMessage.unkeyed(data));
+            metrics.recordMessage(address, 1, data.length, 0);
+            commit(event, address, 1, data.length);
+        }
+    }
+
+    // Counters of every connected client and of the host-side paths, bundled and followed by
+    // /harness/stats/ok <id>. Returns false if the client is not connected.
+    public boolean sendStats(int port, int id) {
+        Client client = activeClients.get(port);
+        if (client == null) {
+            return false;
+        }
+        BundleBuilder bundles = new BundleBuilder(SnapshotCache.MAX_BUNDLE_SIZE);
+        OscSink sink = (address, args) -> bundles.add(OscEncoder.encodeMessage(address, args));
+        for (Client each : activeClients.values()) {
+            each.getQueue().reportStats(sink, each.getPort());
+        }
+        metrics.report(sink);
+        for (byte[] bundle : bundles.finish()) {
+            sendPipeline.enqueue(client.getQueue(), OutboundMessage.unkeyed(bundle));
+        }
+        reply(port, "/harness/stats/ok", id);
+        return true;
+    }
+
+    // Current arguments of one entity, read from its observer, or null if unknown or not yet reported by the
+    // host: an inactive or settling group's cache may hold defaults or values from before it went idle
+    public Object[] query(String address, Object key) {
+        Object[][] result = new Object[1][];
+        OscSink sink = (messageAddress, args) -> {
+            if (messageAddress.equals(address) && key.equals(StateSchema.keyOf(messageAddress, args))) {
+                result[0] = args;
+            }
+        };
+        for (StateObserver observer : observers) {
+            if (observer.isReady() && SubscriptionTrie.covers(Set.of(observer.getAddresses()), address)) {
+                observer.query(sink);
+            }
+        }
+        return result[0];
+    }
+
+    // Sends the current state matching a pattern (see StateSchema.matches) to one client, bundled like a
+    // snapshot and followed by /state/get/ok <id> <count>. Groups that are not observed are activated for the
+    // query and answered from a later flush, once the host has reported them. Ignored if not connected.
+    public void get(int port, int id, String pattern) {
+        if (!activeClients.containsKey(port)) {
+            return;
+        }
+        List<String> retained = new ArrayList<>();
+        for (StateObserver observer : observers) {
+            if (!observer.isReady() && mayMatch(pattern, observer)) {
+                retained.add(observer.getAddresses()[0]);
+            }
+        }
+        if (retained.isEmpty()) {
+            answerGet(port, id, pattern);
+            return;
+        }
+        for (String address : retained) {
+            retain(address);
+        }
+        pendingGets.add(new PendingGet(port, id, pattern, retained));
+        flushRequester.run();
+    }
+
+    private void answerPendingGets() {
+        List<PendingGet> answered = List.copyOf(pendingGets);
+        pendingGets.clear();
+        for (PendingGet pending : answered) {
+            answerGet(pending.port(), pending.id(), pending.pattern());
+            for (String address : pending.retained()) {
+                release(address);
+            }
+        }
+    }
+
+    private void answerGet(int port, int id, String pattern) {
+        Client client = activeClients.get(port);
+        if (client == null) {
+            return;
+        }
+        BundleBuilder bundles = new BundleBuilder(SnapshotCache.MAX_BUNDLE_SIZE);
+        int[] count = {0};
+        OscSink sink = (address, args) -> {
+            if (StateSchema.matches(pattern, address, args)) {
+                bundles.add(OscEncoder.encodeSequencedMessage(address, args));
+                count[0]++;
             }
+        };
+        for (StateObserver observer : observers) {
+            if (observer.isReady() && mayMatch(pattern, observer)) {
+                observer.query(sink);
+            }
+        }
+        for (byte[] bundle : bundles.finish()) {
+            sendPipeline.enqueue(client.getQueue(), OutboundMessage.unkeyed(bundle));
+        }
+        reply(port, "/state/get/ok", id, count[0]);
+    }
+
+    // Keeps the observers of an address active for internal use, independent of client subscriptions
+    public void retain(String address) {
+        if (retainedAddresses.merge(address, 1, Integer::sum) == 1) {
+            updateActivations();
+        }
+    }
+
+    public void release(String address) {
+        if (retainedAddresses.computeIfPresent(address, (a, count) -> count > 1 ? count - 1 : null) == null) {
+            updateActivations();
         }
     }
 
-    public void sendTo(OscConnection conn, String address, Object... args) {
-        try {
-            conn.sendMessage(address, args);
-        } catch (IOException e) {
-            // UDP send failure
+    public AwaitRegistry getAwaits() {
+        return awaits;
+    }
+
+    // Replays the latest state of every entity that changed after lastSeq, or the full snapshot
+    // if that is older than the replay ring. Returns false if only a full snapshot could be sent.
+    public boolean resync(int port, int lastSeq) {
+        Client client = activeClients.get(port);
+        if (client == null) {
+            // Nothing to resync; the driver has to /connect
+            return true;
         }
+        List<OutboundMessage> missed = client.getQueue().getReplayRing().since(lastSeq);
+        if (missed == null) {
+            sendSnapshot(client);
+            return false;
+        }
+        sendPipeline.enqueueReplayed(client.getQueue(), missed);
+        return true;
     }
 
-    public void addSnapshotProvider(Consumer<OscConnection> provider) {
+    public void addSnapshotProvider(Consumer<OscSink> provider) {
         snapshotProviders.add(provider);
+        snapshotCache.invalidate();
+    }
+
+    // Observers start inactive and are subscribed in the host only while some client routes to their addresses
+    public void addObserver(StateObserver observer) {
+        observers.add(observer);
+        addSnapshotProvider(sink -> {
+            if (observer.isReady()) {
+                observer.sendSnapshot(sink);
+            }
+        });
+        // Only flushes that broadcast something are timed, so idle ticks don't hide the cost
+        String name = observer.getClass().getSimpleName();
+        Histogram timing = metrics.observer(name);
+        addFlushProvider(() -> {
+            if (!observer.settle()) {
+                settling |= observer.isActive();
+                return;
+            }
+            ObserverFlushEvent event = new ObserverFlushEvent();
+            event.begin();
+            long before = stateBroadcasts;
+            long start = System.nanoTime();
+            observer.flush();
+            if (stateBroadcasts != before) {
+                timing.record(System.nanoTime() - start);
+                if (event.shouldCommit()) {
+                    event.observer = name;
+                    event.messages = stateBroadcasts - before;
+                    event.commit();
+                }
+            }
+        });
+        setActive(observer, isRouted(observer));
     }
 
-    private void sendSnapshot(OscConnection conn) {
-        for (Consumer<OscConnection> provider : snapshotProviders) {
-            provider.accept(conn);
+    public void addFlushProvider(Runnable provider) {
+        flushProviders.add(provider);
+    }
+
+    // Observers only mark state dirty; pending state goes out once per host flush.
+    // Returns whether any state was broadcast or is still held back by throttling.
+    public boolean flush() {
+        long before = stateBroadcasts;
+        settling = false;
+        for (Runnable provider : flushProviders) {
+            provider.run();
+        }
+        boolean held = releaseThrottled();
+        // Settling groups are checked again by the host's next flush or their settle check
+        if (!settling) {
+            sendDeferredSnapshots();
+            if (!pendingGets.isEmpty()) {
+                answerPendingGets();
+            }
+        }
+        return stateBroadcasts != before || held || settling;
+    }
+
+    // Whether every active observer holds values the host has reported, so snapshots can be built from them
+    private boolean isSettled() {
+        for (StateObserver observer : observers) {
+            if (observer.isActive() && !observer.isReady()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void sendDeferredSnapshots() {
+        for (Client client : activeClients.values()) {
+            if (client.isAwaitingSnapshot()) {
+                client.setAwaitingSnapshot(false);
+                sendSnapshot(client);
+            }
+        }
+    }
+
+    // Waits for the next flush if an observer group was just activated: its cached values are not current yet.
+    // Until then the client receives no state updates, which the snapshot supersedes.
+    private boolean deferSnapshot(Client client) {
+        if (isSettled()) {
+            return false;
+        }
+        client.setAwaitingSnapshot(true);
+        flushRequester.run();
+        return true;
+    }
+
+    private void sendSnapshot(Client client) {
+        if (deferSnapshot(client)) {
+            return;
+        }
+        SnapshotCache.Snapshot snapshot = snapshotCache.get(client.getSubscriptions());
+        for (byte[] bundle : snapshot.bundles()) {
+            sendPipeline.enqueue(client.getQueue(), OutboundMessage.unkeyed(bundle));
+        }
+        // The shadow starts out as exactly what the snapshot contains
+        Map<Object, Object[]> shadow = client.getShadow();
+        shadow.clear();
+        shadow.putAll(snapshot.entries());
+        sendSequenceMarker(client);
+    }
+
+    // Like a snapshot, but only the entries that differ from what the client was last sent
+    private void sendChanges(Client client) {
+        if (client.isAwaitingSnapshot() || deferSnapshot(client)) {
+            // A full snapshot follows
+            return;
+        }
+        BundleBuilder bundles = new BundleBuilder(SnapshotCache.MAX_BUNDLE_SIZE);
+        Map<Object, Object[]> shadow = client.getShadow();
+        OscSink sink = (address, args) -> {
+            if (!SubscriptionTrie.covers(client.getSubscriptions(), address)) {
+                return;
+            }
+            Object key = StateSchema.keyOf(address, args);
+            if (!Arrays.deepEquals(shadow.get(key), args)) {
+                shadow.put(key, args);
+                bundles.add(OscEncoder.encodeSequencedMessage(address, args));
+            }
+        };
+        for (Consumer<OscSink> provider : snapshotProviders) {
+            provider.accept(sink);
+        }
+        for (byte[] bundle : bundles.finish()) {
+            sendPipeline.enqueue(client.getQueue(), OutboundMessage.unkeyed(bundle));
+        }
+        sendSequenceMarker(client);
+    }
+
+    // Marks the point in the client's sequence that a snapshot reflects
+    private void sendSequenceMarker(Client client) {
+        sendPipeline.enqueue(client.getQueue(), new OutboundMessage(SEQUENCE_MARKER,
+                OscEncoder.encodeSequencedMessage(SEQUENCE_MARKER), true));
+    }
+
+    // Sends throttled values that are due, and keeps flushes coming while any are still held
+    private boolean releaseThrottled() {
+        boolean held = false;
+        long now = System.nanoTime();
+        for (Client client : activeClients.values()) {
+            ClientThrottle throttle = client.getThrottle();
+            if (throttle.hasHeld()) {
+                throttle.release(now, (message, args) -> {
+                    client.getShadow().put(message.getKey(), args);
+                    sendPipeline.enqueue(client.getQueue(), message);
+                });
+                held |= throttle.hasHeld();
+            }
+        }
+        if (held) {
+            flushRequester.run();
+        }
+        return held;
+    }
+
+    private void updateActivations() {
+        for (StateObserver observer : observers) {
+            boolean interested = isRouted(observer);
+            if (observer.isActive() != interested) {
+                setActive(observer, interested);
+                snapshotCache.invalidate();
+            }
+        }
+    }
+
+    // The host flushes after reporting the values of a newly active group. A group it never reports (nothing
+    // differs from before) settles by timeout, so one flush is requested once that has passed.
+    private void setActive(StateObserver observer, boolean active) {
+        observer.setActive(active);
+        if (active) {
+            scheduler.accept(() -> {
+                if (observer.isActive() && !observer.isReady()) {
+                    flushRequester.run();
+                }
+            }, StateObserver.SETTLE_TIMEOUT_MS + SETTLE_CHECK_MARGIN_MS);
+        }
+    }
+
+    private static boolean mayMatch(String pattern, StateObserver observer) {
+        for (String address : observer.getAddresses()) {
+            if (StateSchema.mayMatch(pattern, address)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isRouted(StateObserver observer) {
+        for (String address : observer.getAddresses()) {
+            if (subscriptions.overlapping(address) != 0) {
+                return true;
+            }
+        }
+        Set<String> prefixes = Set.of(observer.getAddresses());
+        for (String address : retainedAddresses.keySet()) {
+            if (SubscriptionTrie.covers(prefixes, address)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addSubscription(Client client, String prefix) {
+        client.getSubscriptions().add(prefix);
+        subscriptions.subscribe(prefix, client.getIndex());
+    }
+
+    private void removeSubscription(Client client, String prefix) {
+        client.getSubscriptions().remove(prefix);
+        subscriptions.unsubscribe(prefix, client.getIndex());
+    }
+
+    private record PendingGet(int port, int id, String pattern, List<String> retained) {
+    }
+
+    private int freeIndex() {
+        for (int i = 0; i < clientsByIndex.length; i++) {
+            if (clientsByIndex[i] == null) {
+                return i;
+            }
         }
+        return -1;
     }
 }
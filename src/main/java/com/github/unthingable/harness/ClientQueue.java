@@ -0,0 +1,196 @@
+package com.github.unthingable.harness;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Per-client send queue. Nothing is dropped: state messages conflate by entity key while queued, so at most
+// one per entity waits, and events (no key) are never conflated. The capacity only bounds events, which
+// count as overflowed beyond it. Past the stall limit the client is considered stalled: further events are
+// dropped, and the client should be disconnected (see ClientManager.evictStalled).
+// State must never be dropped: the client's shadow already records it as sent, and its sequence number
+// is only assigned when sent, so the client could neither notice the loss nor get the value again.
+// Field deltas of an entity (see StateSchema.fieldKeyOf) conflate per field, and a full message for the
+// entity supersedes them, so a full message replacing an older one in place can't be overtaken by a delta.
+public class ClientQueue {
+
+    private final ClientConnection connection;
+    private final int capacity;
+    private final int stallLimit;
+    // Events are queued as they are; state goes in a Slot, so a newer update can replace it in place
+    private final ArrayDeque<Object> queue = new ArrayDeque<>();
+    private final Map<Object, Slot> pending = new HashMap<>();
+    // Queued field deltas per entity key
+    private final Map<Object, List<Slot>> pendingFields = new HashMap<>();
+    private final ReplayRing replayRing;
+    private int events = 0;
+    private boolean stalled = false;
+    // Only touched by the sender thread
+    private int sequence = 0;
+
+    private long sent;
+    private long bytes;
+    private long conflated;
+    private long overflowed;
+    private long failed;
+
+    // A stall limit of 0 never considers the client stalled
+    public ClientQueue(ClientConnection connection, int capacity, int stallLimit, int replayCapacity) {
+        this.connection = connection;
+        this.capacity = capacity;
+        this.stallLimit = stallLimit;
+        this.replayRing = new ReplayRing(replayCapacity);
+    }
+
+    public ReplayRing getReplayRing() {
+        return replayRing;
+    }
+
+    int nextSequence() {
+        return ++sequence;
+    }
+
+    public ClientConnection getConnection() {
+        return connection;
+    }
+
+    // Returns true if the queue went from empty to non-empty
+    public synchronized boolean offer(OutboundMessage message) {
+        Object key = message.getKey();
+        if (key != null) {
+            Object entity = StateSchema.entityOf(key);
+            if (entity == key) {
+                // Carries every field, newer than any queued delta
+                conflated += cancelFields(entity).size();
+            }
+            Slot slot = pending.get(key);
+            if (slot != null) {
+                slot.message = message;
+                conflated++;
+                return false;
+            }
+            Slot added = new Slot(message);
+            pending.put(key, added);
+            if (entity != key) {
+                pendingFields.computeIfAbsent(entity, e -> new ArrayList<>(2)).add(added);
+            }
+            queue.add(added);
+            return queue.size() == 1;
+        }
+        if (events >= capacity) {
+            overflowed++;
+        }
+        if (stallLimit > 0 && events >= stallLimit) {
+            stalled = true;
+            return false;
+        }
+        events++;
+        queue.add(message);
+        return queue.size() == 1;
+    }
+
+    // Queues replayed state (see ReplayRing.since), oldest first. Replayed state must not overwrite a newer
+    // update for the same entity that was already queued: a replayed message yields to a queued one for its key,
+    // a replayed delta to a queued full message, and queued deltas move behind a replayed full message instead
+    // of being superseded by it. Replayed messages among themselves keep their order.
+    // Returns true if the queue went from empty to non-empty.
+    public synchronized boolean offerReplayed(List<OutboundMessage> messages) {
+        boolean wasEmpty = queue.isEmpty();
+        Set<Object> queued = new HashSet<>(pending.keySet());
+        for (OutboundMessage message : messages) {
+            Object key = message.getKey();
+            Object entity = StateSchema.entityOf(key);
+            if (queued.contains(key) || (entity != key && queued.contains(entity))) {
+                continue;
+            }
+            List<Slot> newer = entity == key ? cancelFields(entity) : List.of();
+            offer(message);
+            for (Slot slot : newer) {
+                offer(slot.message);
+            }
+        }
+        return wasEmpty && !queue.isEmpty();
+    }
+
+    public synchronized OutboundMessage poll() {
+        Object head;
+        while ((head = queue.poll()) instanceof Slot slot) {
+            if (slot.cancelled) {
+                continue;
+            }
+            Object key = slot.message.getKey();
+            pending.remove(key);
+            Object entity = StateSchema.entityOf(key);
+            if (entity != key) {
+                List<Slot> fields = pendingFields.get(entity);
+                fields.remove(slot);
+                if (fields.isEmpty()) {
+                    pendingFields.remove(entity);
+                }
+            }
+            return slot.message;
+        }
+        if (head != null) {
+            events--;
+        }
+        return (OutboundMessage) head;
+    }
+
+    // Takes the queued deltas of an entity out of the queue and returns them, oldest first
+    private List<Slot> cancelFields(Object entity) {
+        List<Slot> fields = pendingFields.remove(entity);
+        if (fields == null) {
+            return List.of();
+        }
+        for (Slot slot : fields) {
+            slot.cancelled = true;
+            pending.remove(slot.message.getKey());
+        }
+        return fields;
+    }
+
+    public synchronized boolean isStalled() {
+        return stalled;
+    }
+
+    public synchronized boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    public synchronized void clear() {
+        queue.clear();
+        pending.clear();
+        pendingFields.clear();
+        events = 0;
+    }
+
+    synchronized void recordSent(int length) {
+        sent++;
+        bytes += length;
+    }
+
+    synchronized void recordFailure() {
+        failed++;
+    }
+
+    public synchronized void reportStats(OscSink sink, int port) {
+        sink.send("/harness/stats/client", port, sent, bytes, conflated, overflowed, failed, queue.size());
+    }
+
+    public synchronized String describeStats() {
+        return "sent " + sent + " (" + bytes + " bytes), conflated " + conflated + ", overflowed " + overflowed + ", failed " + failed;
+    }
+
+    private static final class Slot {
+        private OutboundMessage message;
+        private boolean cancelled = false;
+
+        private Slot(OutboundMessage message) {
+            this.message = message;
+        }
+    }
+}
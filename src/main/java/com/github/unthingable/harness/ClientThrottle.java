@@ -0,0 +1,132 @@
+package com.github.unthingable.harness;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+// Per-client throttling of continuous values. An update that is too small or too soon is held back
+// rather than dropped, and goes out once it is due, so the client always ends up with the settled value.
+public class ClientThrottle {
+
+    // A value held back by the deadband is sent once it has stopped changing for this long
+    private static final long SETTLE_NANOS = 100_000_000L;
+
+    private final Map<String, Throttle> overrides = new HashMap<>();
+    private final Map<Object, Entry> entries = new HashMap<>();
+    private int held = 0;
+
+    public void setOverride(String prefix, Throttle throttle) {
+        overrides.put(prefix, throttle);
+    }
+
+    public void removeOverride(String prefix) {
+        overrides.remove(prefix);
+    }
+
+    // The most specific override covering the address, or the given default
+    public Throttle resolve(String address, Throttle fallback) {
+        if (overrides.isEmpty()) {
+            return fallback;
+        }
+        for (String prefix = address; !prefix.isEmpty(); prefix = prefix.substring(0, prefix.lastIndexOf('/'))) {
+            Throttle throttle = overrides.get(prefix);
+            if (throttle != null) {
+                return throttle;
+            }
+        }
+        Throttle root = overrides.get("/");
+        return root != null ? root : fallback;
+    }
+
+    // Returns true if the message should be sent now; otherwise it is held until release
+    public boolean admit(Object key, Object[] args, int field, Throttle throttle, OutboundMessage message, long now) {
+        double value = args[field] instanceof Number n ? n.doubleValue() : 0.0;
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(key, entry);
+        } else if (sameExcept(entry.args, args, field)) {
+            double delta = Math.abs(value - entry.value);
+            if (delta < throttle.deadband() || now - entry.sentAt < throttle.minIntervalNanos()) {
+                if (entry.held == null) {
+                    held++;
+                }
+                entry.held = message;
+                entry.heldValue = value;
+                entry.heldArgs = args;
+                entry.throttle = throttle;
+                entry.changedAt = now;
+                return false;
+            }
+        }
+        // Other fields changed, or the value moved far enough after long enough
+        if (entry.held != null) {
+            entry.held = null;
+            held--;
+        }
+        entry.record(args, value, now);
+        return true;
+    }
+
+    public boolean hasHeld() {
+        return held > 0;
+    }
+
+    // Drops the held update of an entity that is back at the value last sent
+    public void cancel(Object key) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.held != null) {
+            entry.held = null;
+            held--;
+        }
+    }
+
+    // Passes on held messages that are due, with their arguments
+    public void release(long now, BiConsumer<OutboundMessage, Object[]> send) {
+        if (held == 0) {
+            return;
+        }
+        for (Entry entry : entries.values()) {
+            if (entry.held == null || now - entry.sentAt < entry.throttle.minIntervalNanos()) {
+                continue;
+            }
+            if (Math.abs(entry.heldValue - entry.value) >= entry.throttle.deadband()
+                    || now - entry.changedAt >= SETTLE_NANOS) {
+                send.accept(entry.held, entry.heldArgs);
+                entry.held = null;
+                held--;
+                entry.record(entry.heldArgs, entry.heldValue, now);
+            }
+        }
+    }
+
+    private static boolean sameExcept(Object[] a, Object[] b, int field) {
+        if (a.length != b.length) {
+            return false;
+        }
+        for (int i = 0; i < a.length; i++) {
+            if (i != field && !Objects.equals(a[i], b[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Entry {
+        private Object[] args;
+        private double value;
+        private long sentAt;
+        private OutboundMessage held;
+        private Object[] heldArgs;
+        private double heldValue;
+        private long changedAt;
+        private Throttle throttle;
+
+        private void record(Object[] args, double value, long now) {
+            this.args = args;
+            this.value = value;
+            this.sentAt = now;
+        }
+    }
+}
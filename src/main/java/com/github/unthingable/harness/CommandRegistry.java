@@ -0,0 +1,66 @@
+package com.github.unthingable.harness;
+
+import com.bitwig.extension.api.opensoundcontrol.OscAddressSpace;
+import com.github.unthingable.harness.jfr.CommandEvent;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Harness commands, registered with Bitwig's OSC address space and kept for dispatch from /batch
+public class CommandRegistry {
+
+    @FunctionalInterface
+    public interface Handler {
+        void handle(List<?> args);
+    }
+
+    private final OscAddressSpace addressSpace;
+    private final Metrics metrics;
+    private final Map<String, Command> commands = new HashMap<>();
+
+    public CommandRegistry(OscAddressSpace addressSpace, Metrics metrics) {
+        this.addressSpace = addressSpace;
+        this.metrics = metrics;
+    }
+
+    public void register(String address, String typeTag, String description, Handler handler) {
+        Histogram timing = metrics.command(address);
+        Handler timed = args -> {
+            CommandEvent event = new CommandEvent();
+            event.begin();
+            long start = System.nanoTime();
+            try {
+                handler.handle(args);
+            } finally {
+                timing.record(System.nanoTime() - start);
+                if (event.shouldCommit()) {
+                    event.address = address;
+                    event.commit();
+                }
+            }
+        };
+        commands.put(address, new Command(typeTag, timed));
+        addressSpace.registerMethod(address, typeTag, description,
+                (source, message) -> timed.handle(message.getArguments()));
+    }
+
+    // Error message, or null if the message would be dispatched
+    public String validate(String address, String typeTag) {
+        Command command = commands.get(address);
+        if (command == null) {
+            return "Unknown command " + address;
+        }
+        if (!command.typeTag.equals(typeTag)) {
+            return address + " expects " + command.typeTag + ", got " + typeTag;
+        }
+        return null;
+    }
+
+    public void dispatch(String address, List<?> args) {
+        commands.get(address).handler.handle(args);
+    }
+
+    private record Command(String typeTag, Handler handler) {
+    }
+}
@@ -1,7 +1,6 @@
 package com.github.unthingable.harness;
 
 import com.bitwig.extension.api.opensoundcontrol.OscAddressSpace;
-import com.bitwig.extension.api.opensoundcontrol.OscConnection;
 import com.bitwig.extension.api.opensoundcontrol.OscModule;
 import com.bitwig.extension.controller.ControllerExtension;
 import com.bitwig.extension.controller.api.ControllerHost;
@@ -14,6 +13,13 @@ import com.bitwig.extension.controller.api.MidiOut;
 import com.bitwig.extension.controller.api.TrackBank;
 import com.bitwig.extension.controller.api.Transport;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.DatagramChannel;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -29,11 +35,17 @@ import com.github.unthingable.harness.observers.TransportObserver;
 public class HarnessExtension extends ControllerExtension {
 
     private static final int OSC_PORT = 9000;
-    private static final int CLIENT_PORT_START = 9001;
-    private static final int CLIENT_PORT_END = 9016;
-    private static final int BANK_SIZE = 8;
-    private static final int SCENE_COUNT = 8;
-    private static final int REMOTE_CONTROL_COUNT = 8;
+    private static final String CLIENT_HOST = "127.0.0.1";
+    private static final int IDLE_CHECK_INTERVAL_MS = 1000;
+    private static final int MIN_STATS_INTERVAL_MS = 100;
+
+    private ClientManager clientManager;
+    private DatagramChannel clientChannel;
+    private StreamTransport streamTransport;
+    private SendPipeline sendPipeline;
+    private SyncBarrier syncBarrier;
+    // Current periodic stats push per client port; a new /harness/stats/push ends the previous one
+    private final Map<Integer, Integer> statsPushes = new HashMap<>();
 
     protected HarnessExtension(HarnessDefinition definition, ControllerHost host) {
         super(definition, host);
@@ -44,22 +56,36 @@ public class HarnessExtension extends ControllerExtension {
         ControllerHost host = getHost();
         OscModule oscModule = host.getOscModule();
         OscAddressSpace addressSpace = oscModule.createAddressSpace();
-
-        // Pre-allocate client connection pool (ports 9001–9016)
-        OscAddressSpace clientAddressSpace = oscModule.createAddressSpace();
-        Map<Integer, OscConnection> connectionPool = new HashMap<>();
-        for (int port = CLIENT_PORT_START; port <= CLIENT_PORT_END; port++) {
-            connectionPool.put(port, oscModule.connectToUdpServer("::ffff:127.0.0.1", port, clientAddressSpace));
+        Metrics metrics = new Metrics();
+        CommandRegistry commands = new CommandRegistry(addressSpace, metrics);
+        HarnessSettings settings = new HarnessSettings(host.getPreferences());
+        int bankSize = settings.getBankSize();
+        int sceneCount = settings.getSceneCount();
+        int remoteControlCount = settings.getRemoteControlCount();
+
+        // Client connections are created on /connect, all sending from one UDP socket
+        try {
+            clientChannel = DatagramChannel.open();
+            streamTransport = new StreamTransport();
+        } catch (IOException e) {
+            host.errorln("Could not open client socket: " + e.getMessage());
+            return;
         }
-        host.println("Pre-allocated " + connectionPool.size() + " client connections");
+        streamTransport.start();
 
-        // Client manager
-        ClientManager clientManager = new ClientManager(connectionPool);
+        // Client manager; sends run on their own thread
+        sendPipeline = new SendPipeline();
+        sendPipeline.start();
+        clientManager = new ClientManager(sendPipeline, host::requestFlush, host::scheduleTask, metrics);
+        clientManager.setDefaultThrottle("/state/remote_control/param", settings.getRemoteControlThrottle());
+        clientManager.setDefaultThrottle("/state/track", settings.getVolumeThrottle());
+        syncBarrier = new SyncBarrier(clientManager, host::requestFlush);
 
         // MIDI ports
         MidiIn midiIn = host.getMidiInPort(0);
         MidiOut midiOut = host.getMidiOutPort(0);
-        MidiProxy midiProxy = new MidiProxy(midiIn, midiOut, clientManager);
+        MidiProxy midiProxy = new MidiProxy(host, midiIn, midiOut, clientManager);
+        clientManager.addFlushProvider(midiProxy::flushMidiBatch);
 
         // Bitwig API objects
         var application = host.createApplication();
@@ -67,145 +93,417 @@ public class HarnessExtension extends ControllerExtension {
         CursorTrack cursorTrack = host.createCursorTrack("harness-cursor", "Harness Cursor", 0, 0, true);
         CursorDevice cursorDevice = cursorTrack.createCursorDevice("harness-device", "Harness Device", 0,
                 CursorDeviceFollowMode.FOLLOW_SELECTION);
-        CursorRemoteControlsPage remoteControls = cursorDevice.createCursorRemoteControlsPage(REMOTE_CONTROL_COUNT);
-        TrackBank trackBank = host.createMainTrackBank(BANK_SIZE, 0, SCENE_COUNT);
+        CursorRemoteControlsPage remoteControls = cursorDevice.createCursorRemoteControlsPage(remoteControlCount);
+        TrackBank trackBank = host.createMainTrackBank(bankSize, 0, sceneCount);
         trackBank.followCursorTrack(cursorTrack);
+        IndexSelector indexSelector = new IndexSelector(host.createMainTrackBank(1, 0, 0),
+                cursorTrack.createDeviceBank(1), cursorTrack, cursorDevice);
+        RampScheduler ramps = new RampScheduler(host);
 
         // Observers
         ProjectObserver projectObserver = new ProjectObserver(application, clientManager);
         TransportObserver transportObserver = new TransportObserver(transport, clientManager);
         CursorTrackObserver cursorTrackObserver = new CursorTrackObserver(cursorTrack, clientManager);
         DeviceObserver deviceObserver = new DeviceObserver(cursorDevice, clientManager);
-        RemoteControlsObserver remoteControlsObserver = new RemoteControlsObserver(remoteControls, clientManager, REMOTE_CONTROL_COUNT);
-        TrackBankObserver trackBankObserver = new TrackBankObserver(trackBank, clientManager, BANK_SIZE);
-        ClipMatrixObserver clipMatrixObserver = new ClipMatrixObserver(trackBank, clientManager, BANK_SIZE, SCENE_COUNT);
-
-        // Register snapshot providers
-        clientManager.addSnapshotProvider(projectObserver::sendSnapshot);
-        clientManager.addSnapshotProvider(transportObserver::sendSnapshot);
-        clientManager.addSnapshotProvider(cursorTrackObserver::sendSnapshot);
-        clientManager.addSnapshotProvider(deviceObserver::sendSnapshot);
-        clientManager.addSnapshotProvider(remoteControlsObserver::sendSnapshot);
-        clientManager.addSnapshotProvider(trackBankObserver::sendSnapshot);
-        clientManager.addSnapshotProvider(clipMatrixObserver::sendSnapshot);
+        RemoteControlsObserver remoteControlsObserver = new RemoteControlsObserver(remoteControls, clientManager, remoteControlCount);
+        TrackBankObserver trackBankObserver = new TrackBankObserver(trackBank, clientManager, bankSize);
+        ClipMatrixObserver clipMatrixObserver = new ClipMatrixObserver(trackBank, clientManager, bankSize, sceneCount);
+
+        // Register observers; each one stays unsubscribed in the host until a client is interested
+        clientManager.addObserver(projectObserver);
+        clientManager.addObserver(transportObserver);
+        clientManager.addObserver(cursorTrackObserver);
+        clientManager.addObserver(deviceObserver);
+        clientManager.addObserver(remoteControlsObserver);
+        clientManager.addObserver(trackBankObserver);
+        clientManager.addObserver(clipMatrixObserver);
 
         // Connection management
-        addressSpace.registerMethod("/connect", ",i", "Connect client", (source, message) -> {
-            int port = intArg(message.getArguments(), 0);
-            if (clientManager.register(port)) {
-                host.println("Client connected on port " + port);
-            } else {
-                host.errorln("Client port " + port + " not in pre-allocated range "
-                        + CLIENT_PORT_START + "–" + CLIENT_PORT_END);
+        commands.register("/connect", ",i", "Connect client", args -> connect(settings, CLIENT_HOST, intArg(args, 0)));
+
+        commands.register("/connect/host", ",is", "Connect client on another host",
+                args -> connect(settings, stringArg(args, 1), intArg(args, 0)));
+
+        commands.register("/connect/tcp", ",i", "Connect client over TCP",
+                args -> connectStream(settings, intArg(args, 0), new InetSocketAddress(CLIENT_HOST, intArg(args, 0))));
+
+        commands.register("/connect/unix", ",is", "Connect client over a Unix domain socket", args -> {
+            String path = stringArg(args, 1);
+            if (path.isEmpty()) {
+                host.errorln("/connect/unix needs a socket path");
+                return;
+            }
+            if (settings.getSocketDirectory() == null) {
+                host.errorln("/connect/unix is disabled (set a socket directory in preferences)");
+                return;
+            }
+            Path socket;
+            try {
+                socket = Path.of(path);
+            } catch (InvalidPathException e) {
+                host.errorln("Invalid socket path: " + path);
+                return;
+            }
+            if (!settings.isSocketAllowed(socket)) {
+                host.errorln("Socket " + path + " not allowed (must be under " + settings.getSocketDirectory() + ")");
+                return;
+            }
+            connectStream(settings, intArg(args, 0), UnixDomainSocketAddress.of(socket.normalize()));
+        });
+
+        commands.register("/ping", ",ii", "Client heartbeat", args -> {
+            int port = intArg(args, 0);
+            if (clientManager.touch(port)) {
+                clientManager.reply(port, "/pong", intArg(args, 1));
             }
         });
 
-        addressSpace.registerMethod("/disconnect", ",i", "Disconnect client", (source, message) -> {
-            int port = intArg(message.getArguments(), 0);
+        commands.register("/disconnect", ",i", "Disconnect client", args -> {
+            int port = intArg(args, 0);
+            host.println("Client disconnected from port " + port + " (" + clientManager.describeStats(port) + ")");
             clientManager.unregister(port);
-            host.println("Client disconnected from port " + port);
+        });
+
+        commands.register("/resync", ",ii", "Replay state missed since a sequence number", args -> {
+            int port = intArg(args, 0);
+            int lastSeq = intArg(args, 1);
+            if (!clientManager.resync(port, lastSeq)) {
+                host.println("Client on port " + port + " resynced from " + lastSeq + " with a full snapshot");
+            }
+        });
+
+        // Server-side waits on observed state
+        commands.register("/await", ",iisssi", "Reply once a state predicate holds", args -> {
+            int port = intArg(args, 0);
+            int id = intArg(args, 1);
+            StateSchema.Path path = StateSchema.parsePath(stringArg(args, 2));
+            AwaitRegistry.Op op = AwaitRegistry.Op.parse(stringArg(args, 3));
+            if (path == null || op == null) {
+                clientManager.reply(port, "/await/error", id, "Bad path or operator: " + stringArg(args, 2) + " " + stringArg(args, 3));
+                return;
+            }
+            AwaitRegistry.Await await = clientManager.getAwaits().add(port, id, path, op, stringArg(args, 4));
+            if (await != null) {
+                host.scheduleTask(() -> clientManager.getAwaits().expire(await), intArg(args, 5));
+            }
+        });
+
+        commands.register("/state/get", ",iis", "Send current state matching a pattern", args -> {
+            int port = intArg(args, 0);
+            int id = intArg(args, 1);
+            String pattern = SubscriptionTrie.normalize(stringArg(args, 2));
+            if (pattern == null || !StateSchema.isState(pattern + "/")) {
+                clientManager.reply(port, "/state/get/error", id, "Not a /state pattern: " + stringArg(args, 2));
+                return;
+            }
+            clientManager.get(port, id, pattern);
+        });
+
+        commands.register("/sync", ",ii", "Reply once earlier commands' effects are sent", args -> {
+            syncBarrier.add(intArg(args, 0), intArg(args, 1));
+        });
+
+        // Several commands dispatched in order within one host callback
+        commands.register("/batch", ",iib", "Execute a bundle of commands", args -> {
+            int port = intArg(args, 0);
+            int id = intArg(args, 1);
+            List<OscDecoder.Message> batch;
+            try {
+                batch = OscDecoder.decodePacket(args.get(2) instanceof byte[] b ? b : new byte[0]);
+            } catch (IllegalArgumentException e) {
+                clientManager.reply(port, "/batch/error", id, -1, e.getMessage());
+                return;
+            }
+            // Validate everything first so that a malformed batch runs nothing
+            for (int i = 0; i < batch.size(); i++) {
+                OscDecoder.Message command = batch.get(i);
+                String error = command.address().equals("/batch")
+                        ? "Nested /batch" : commands.validate(command.address(), command.typeTag());
+                if (error != null) {
+                    clientManager.reply(port, "/batch/error", id, i, error);
+                    return;
+                }
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                OscDecoder.Message command = batch.get(i);
+                try {
+                    commands.dispatch(command.address(), command.args());
+                } catch (RuntimeException e) {
+                    clientManager.reply(port, "/batch/error", id, i, command.address() + ": " + e);
+                    return;
+                }
+            }
+            clientManager.reply(port, "/batch/ok", id, batch.size());
+        });
+
+        // Subscriptions
+        commands.register("/subscribe", ",is", "Subscribe client to address prefix", args -> {
+            int port = intArg(args, 0);
+            String prefix = stringArg(args, 1);
+            if (!clientManager.subscribe(port, prefix)) {
+                host.errorln("Cannot subscribe port " + port + " to " + prefix);
+            }
+        });
+
+        commands.register("/unsubscribe", ",is", "Unsubscribe client from address prefix", args -> {
+            int port = intArg(args, 0);
+            String prefix = stringArg(args, 1);
+            if (!clientManager.unsubscribe(port, prefix)) {
+                host.errorln("Cannot unsubscribe port " + port + " from " + prefix);
+            }
+        });
+
+        commands.register("/deltas", ",ii", "Send changed fields only", args -> {
+            int port = intArg(args, 0);
+            if (!clientManager.setDeltas(port, intArg(args, 1) != 0)) {
+                host.errorln("Cannot set deltas for port " + port);
+            }
+        });
+
+        commands.register("/throttle", ",isff", "Throttle continuous values under a prefix", args -> {
+            int port = intArg(args, 0);
+            String prefix = stringArg(args, 1);
+            if (!clientManager.throttle(port, prefix, doubleArg(args, 2), doubleArg(args, 3))) {
+                host.errorln("Cannot throttle " + prefix + " for port " + port);
+            }
+        });
+
+        // Runtime metrics
+        commands.register("/harness/stats", ",ii", "Send runtime counters", args -> {
+            clientManager.sendStats(intArg(args, 0), intArg(args, 1));
+        });
+
+        commands.register("/harness/stats/push", ",ii", "Send runtime counters periodically", args -> {
+            int port = intArg(args, 0);
+            int intervalMs = intArg(args, 1);
+            int generation = statsPushes.merge(port, 1, Integer::sum);
+            if (intervalMs > 0) {
+                scheduleStatsPush(port, Math.max(MIN_STATS_INTERVAL_MS, intervalMs), generation);
+            }
         });
 
         // MIDI proxy
-        addressSpace.registerMethod("/midi/send", ",iiii", "Send MIDI to virtual port", (source, message) -> {
-            var args = message.getArguments();
+        commands.register("/midi/send", ",iiii", "Send MIDI to virtual port", args -> {
             midiProxy.sendMidi(intArg(args, 0), intArg(args, 1), intArg(args, 2), intArg(args, 3));
         });
 
-        addressSpace.registerMethod("/midi/sysex/send", ",s", "Send sysex to virtual port", (source, message) -> {
-            midiProxy.sendSysex(message.getArguments().get(0).toString());
+        commands.register("/midi/send_batch", ",b", "Send timed MIDI events to virtual port", args -> {
+            try {
+                midiProxy.sendMidiBatch(args.get(0) instanceof byte[] b ? b : new byte[0]);
+            } catch (IllegalArgumentException e) {
+                host.errorln(e.getMessage());
+            }
+        });
+
+        commands.register("/midi/sysex/send", ",s", "Send sysex to virtual port", args -> {
+            midiProxy.sendSysex(stringArg(args, 0));
+        });
+
+        commands.register("/midi/sysex/blob/send", ",iiib", "Send binary sysex to virtual port in chunks", args -> {
+            try {
+                midiProxy.sendSysexChunk(intArg(args, 0), intArg(args, 1), intArg(args, 2),
+                        args.get(3) instanceof byte[] b ? b : new byte[0]);
+            } catch (IllegalArgumentException e) {
+                host.errorln(e.getMessage());
+            }
         });
 
         // Transport controls
-        addressSpace.registerMethod("/transport/play", ",", "Play", (source, message) -> transport.play());
-        addressSpace.registerMethod("/transport/stop", ",", "Stop", (source, message) -> transport.stop());
-        addressSpace.registerMethod("/transport/record", ",", "Record", (source, message) -> transport.record());
+        commands.register("/transport/play", ",", "Play", args -> transport.play());
+        commands.register("/transport/stop", ",", "Stop", args -> transport.stop());
+        commands.register("/transport/record", ",", "Record", args -> transport.record());
 
-        // Track selection
-        addressSpace.registerMethod("/track/select", ",i", "Select track by index", (source, message) -> {
-            int index = intArg(message.getArguments(), 0);
-            cursorTrack.selectFirst();
-            for (int i = 0; i < index; i++) {
-                cursorTrack.selectNext();
+        // Track and device selection by index
+        commands.register("/track/select", ",i", "Select track by index", args -> {
+            int index = intArg(args, 0);
+            if (!indexSelector.selectTrack(index)) {
+                host.errorln("No track at index " + index);
             }
         });
 
-        // Device selection
-        addressSpace.registerMethod("/device/select", ",i", "Select device by index", (source, message) -> {
-            int index = intArg(message.getArguments(), 0);
-            cursorDevice.selectFirst();
-            for (int i = 0; i < index; i++) {
-                cursorDevice.selectNext();
+        commands.register("/device/select", ",i", "Select device by index", args -> {
+            int index = intArg(args, 0);
+            if (!indexSelector.selectDevice(index)) {
+                host.errorln("No device at index " + index);
             }
         });
 
         // Remote controls
-        addressSpace.registerMethod("/remote_control/page/next", ",", "Next remote controls page",
-                (source, message) -> remoteControls.selectNextPage(false));
+        commands.register("/remote_control/page/next", ",", "Next remote controls page",
+                args -> remoteControls.selectNextPage(false));
 
-        addressSpace.registerMethod("/remote_control/page/prev", ",", "Previous remote controls page",
-                (source, message) -> remoteControls.selectPreviousPage(false));
+        commands.register("/remote_control/page/prev", ",", "Previous remote controls page",
+                args -> remoteControls.selectPreviousPage(false));
 
-        addressSpace.registerMethod("/remote_control/page/select", ",i", "Select remote controls page", (source, message) -> {
-            remoteControls.selectedPageIndex().set(intArg(message.getArguments(), 0));
+        commands.register("/remote_control/page/select", ",i", "Select remote controls page", args -> {
+            remoteControls.selectedPageIndex().set(intArg(args, 0));
         });
 
-        addressSpace.registerMethod("/remote_control/set", ",if", "Set remote control value", (source, message) -> {
-            var args = message.getArguments();
+        commands.register("/remote_control/set", ",if", "Set remote control value", args -> {
             int index = intArg(args, 0);
-            if (index >= 0 && index < REMOTE_CONTROL_COUNT) {
+            if (index >= 0 && index < remoteControlCount) {
                 remoteControls.getParameter(index).value().set(doubleArg(args, 1));
             }
         });
 
+        commands.register("/remote_control/ramp", ",iffis", "Ramp remote control value", args -> {
+            int index = intArg(args, 0);
+            RampScheduler.Curve curve = RampScheduler.Curve.parse(stringArg(args, 4));
+            if (index < 0 || index >= remoteControlCount || curve == null) {
+                host.errorln("Bad remote control ramp: index " + index + ", curve " + stringArg(args, 4));
+                return;
+            }
+            ramps.start("/remote_control/" + index, remoteControls.getParameter(index).value(),
+                    doubleArg(args, 1), doubleArg(args, 2), intArg(args, 3), curve);
+        });
+
         // Track bank
-        addressSpace.registerMethod("/track/bank/scroll", ",i", "Scroll track bank", (source, message) -> {
-            trackBank.scrollPosition().set(intArg(message.getArguments(), 0));
+        commands.register("/track/bank/scroll", ",i", "Scroll track bank", args -> {
+            trackBank.scrollPosition().set(intArg(args, 0));
+        });
+
+        commands.register("/track/volume/ramp", ",iffis", "Ramp track volume", args -> {
+            int trackIndex = intArg(args, 0);
+            RampScheduler.Curve curve = RampScheduler.Curve.parse(stringArg(args, 4));
+            if (trackIndex < 0 || trackIndex >= bankSize || curve == null) {
+                host.errorln("Bad volume ramp: track " + trackIndex + ", curve " + stringArg(args, 4));
+                return;
+            }
+            ramps.start("/track/" + trackIndex + "/volume", trackBank.getItemAt(trackIndex).volume().value(),
+                    doubleArg(args, 1), doubleArg(args, 2), intArg(args, 3), curve);
         });
 
         // Clip launcher
-        addressSpace.registerMethod("/clip/launch", ",ii", "Launch clip", (source, message) -> {
-            var args = message.getArguments();
+        commands.register("/clip/launch", ",ii", "Launch clip", args -> {
             int trackIndex = intArg(args, 0);
             int sceneIndex = intArg(args, 1);
-            if (trackIndex >= 0 && trackIndex < BANK_SIZE && sceneIndex >= 0 && sceneIndex < SCENE_COUNT) {
+            if (trackIndex >= 0 && trackIndex < bankSize && sceneIndex >= 0 && sceneIndex < sceneCount) {
                 trackBank.getItemAt(trackIndex).clipLauncherSlotBank().launch(sceneIndex);
             }
         });
 
-        addressSpace.registerMethod("/clip/create", ",ii", "Create empty clip", (source, message) -> {
-            var args = message.getArguments();
+        commands.register("/clip/create", ",ii", "Create empty clip", args -> {
             int trackIndex = intArg(args, 0);
             int sceneIndex = intArg(args, 1);
-            if (trackIndex >= 0 && trackIndex < BANK_SIZE && sceneIndex >= 0 && sceneIndex < SCENE_COUNT) {
+            if (trackIndex >= 0 && trackIndex < bankSize && sceneIndex >= 0 && sceneIndex < sceneCount) {
                 trackBank.getItemAt(trackIndex).clipLauncherSlotBank().createEmptyClip(sceneIndex, 4);
             }
         });
 
-        addressSpace.registerMethod("/scene/launch", ",i", "Launch scene", (source, message) -> {
-            int sceneIndex = intArg(message.getArguments(), 0);
-            if (sceneIndex >= 0 && sceneIndex < SCENE_COUNT) {
+        commands.register("/scene/launch", ",i", "Launch scene", args -> {
+            int sceneIndex = intArg(args, 0);
+            if (sceneIndex >= 0 && sceneIndex < sceneCount) {
                 trackBank.sceneBank().launchScene(sceneIndex);
             }
         });
 
         // Application actions
-        addressSpace.registerMethod("/undo", ",", "Undo", (source, message) -> application.undo());
+        commands.register("/undo", ",", "Undo", args -> application.undo());
 
         // Start OSC server
         oscModule.createUdpServer(OSC_PORT, addressSpace);
 
+        scheduleIdleCheck(settings.getClientTimeoutMs());
+
         host.println("Harness extension initialized on port " + OSC_PORT);
     }
 
+    private void connect(HarnessSettings settings, String clientHost, int port) {
+        ControllerHost host = getHost();
+        if (!settings.isPortAllowed(port)) {
+            host.errorln("Client port " + port + " not allowed (ports " + settings.getClientPortStart()
+                    + "–" + settings.getClientPortEnd() + ", see preferences)");
+            return;
+        }
+        if (!clientHost.equals(CLIENT_HOST) && !settings.isHostAllowed(clientHost)) {
+            host.errorln("Client host " + clientHost + " not allowed (see Allowed hosts in preferences)");
+            return;
+        }
+        InetSocketAddress address = new InetSocketAddress(clientHost, port);
+        if (address.isUnresolved()) {
+            host.errorln("Could not resolve client host " + clientHost);
+            return;
+        }
+        register(port, new ClientConnection(clientChannel, address), clientHost + ":" + port);
+    }
+
+    // Same-machine drivers only: the port identifies the client and must be in the client port range
+    private void connectStream(HarnessSettings settings, int port, SocketAddress target) {
+        if (!settings.isPortAllowed(port)) {
+            getHost().errorln("Client port " + port + " not allowed (ports " + settings.getClientPortStart()
+                    + "–" + settings.getClientPortEnd() + ", see preferences)");
+            return;
+        }
+        register(port, new StreamConnection(streamTransport, target, port), target + " (port " + port + ")");
+    }
+
+    private void register(int port, ClientConnection connection, String description) {
+        ControllerHost host = getHost();
+        try {
+            if (clientManager.register(port, connection)) {
+                host.println("Client connected on " + description);
+            } else {
+                host.errorln("Too many clients, " + description + " not connected");
+            }
+        } catch (IOException e) {
+            host.errorln("Could not connect to " + description + ": " + e.getMessage());
+        }
+    }
+
+    private void scheduleStatsPush(int port, int intervalMs, int generation) {
+        getHost().scheduleTask(() -> {
+            if (clientChannel.isOpen() && statsPushes.get(port) == generation
+                    && clientManager.sendStats(port, 0)) {
+                scheduleStatsPush(port, intervalMs, generation);
+            }
+        }, intervalMs);
+    }
+
+    // Clients that crashed without /disconnect stop costing sends once their heartbeat times out,
+    // or at once if their stream connection was closed
+    private void scheduleIdleCheck(int timeoutMs) {
+        getHost().scheduleTask(() -> {
+            if (clientChannel.isOpen()) {
+                if (timeoutMs > 0) {
+                    for (int port : clientManager.evictIdle(timeoutMs)) {
+                        getHost().println("Client on port " + port + " timed out");
+                    }
+                }
+                for (int port : clientManager.evictStalled()) {
+                    getHost().println("Client on port " + port + " stopped reading and was disconnected");
+                }
+                for (int port : clientManager.evictClosed()) {
+                    getHost().println("Client on port " + port + " closed its connection");
+                }
+                scheduleIdleCheck(timeoutMs);
+            }
+        }, IDLE_CHECK_INTERVAL_MS);
+    }
+
     @Override
     public void exit() {
+        if (sendPipeline != null) {
+            sendPipeline.stop();
+        }
+        if (streamTransport != null) {
+            streamTransport.stop();
+        }
+        if (clientChannel != null) {
+            try {
+                clientChannel.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+        }
         getHost().println("Harness extension exiting");
     }
 
     @Override
     public void flush() {
-        // State pushed via observers — nothing to flush
+        // Observers coalesce their changes; deliver each dirty entity once per host tick
+        if (clientManager != null) {
+            syncBarrier.onFlush(clientManager.flush());
+        }
     }
 
     private static int intArg(List<?> args, int index) {
@@ -215,4 +513,9 @@ public class HarnessExtension extends ControllerExtension {
     private static double doubleArg(List<?> args, int index) {
         return args.get(index) instanceof Number n ? n.doubleValue() : 0.0;
     }
+
+    private static String stringArg(List<?> args, int index) {
+        Object arg = args.get(index);
+        return arg != null ? arg.toString() : "";
+    }
 }
@@ -0,0 +1,128 @@
+package com.github.unthingable.harness;
+
+import com.bitwig.extension.controller.api.Preferences;
+import com.bitwig.extension.controller.api.SettableRangedValue;
+import com.bitwig.extension.controller.api.SettableStringValue;
+
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+// Layout and client limits from the controller preferences, read once at init.
+// Bitwig objects are created at these sizes, so changes apply after the extension restarts.
+public class HarnessSettings {
+
+    private static final String LAYOUT = "Layout";
+    private static final String CLIENTS = "Clients";
+    private static final String THROTTLING = "Throttling";
+
+    private final int bankSize;
+    private final int sceneCount;
+    private final int remoteControlCount;
+    private final int clientPortStart;
+    private final int clientPortEnd;
+    private final Set<String> allowedHosts = new LinkedHashSet<>();
+    private final Path socketDirectory;
+    private final int clientTimeoutMs;
+    private final Throttle remoteControlThrottle;
+    private final Throttle volumeThrottle;
+
+    public HarnessSettings(Preferences preferences) {
+        bankSize = read(preferences.getNumberSetting("Tracks", LAYOUT, 1, 128, 1, "", 8));
+        sceneCount = read(preferences.getNumberSetting("Scenes", LAYOUT, 1, 128, 1, "", 8));
+        remoteControlCount = read(preferences.getNumberSetting("Remote controls", LAYOUT, 1, 64, 1, "", 8));
+        clientPortStart = read(preferences.getNumberSetting("First client port", CLIENTS, 1024, 65535, 1, "", 9001));
+        int clientPorts = read(preferences.getNumberSetting("Client ports", CLIENTS, 1, 1024, 1, "", 16));
+        clientPortEnd = Math.min(clientPortStart + clientPorts - 1, 65535);
+        SettableStringValue hosts = preferences.getStringSetting("Allowed hosts", CLIENTS, 256, "127.0.0.1");
+        hosts.markInterested();
+        for (String host : hosts.get().split(",")) {
+            if (!host.isBlank()) {
+                allowedHosts.add(host.strip());
+            }
+        }
+        // Unix socket clients may only connect to sockets under this directory; empty disables /connect/unix
+        SettableStringValue sockets = preferences.getStringSetting("Socket directory", CLIENTS, 256, "");
+        sockets.markInterested();
+        socketDirectory = readDirectory(sockets.get().strip());
+        // 0 keeps clients until they disconnect; otherwise drivers must /ping within the timeout
+        clientTimeoutMs = 1000 * read(preferences.getNumberSetting("Client timeout", CLIENTS, 0, 3600, 1, "s", 0));
+        // Deadbands are in normalized units (0..1); a rate of 0 is unlimited
+        remoteControlThrottle = Throttle.of(
+                readRaw(preferences.getNumberSetting("Remote control deadband", THROTTLING, 0, 0.1, 0.0001, "", 0)),
+                readRaw(preferences.getNumberSetting("Remote control max rate", THROTTLING, 0, 1000, 1, "Hz", 0)));
+        volumeThrottle = Throttle.of(
+                readRaw(preferences.getNumberSetting("Volume deadband", THROTTLING, 0, 0.1, 0.0001, "", 0)),
+                readRaw(preferences.getNumberSetting("Volume max rate", THROTTLING, 0, 1000, 1, "Hz", 0)));
+    }
+
+    private static Path readDirectory(String value) {
+        try {
+            Path path = Path.of(value);
+            return path.isAbsolute() ? path.normalize() : null;
+        } catch (InvalidPathException e) {
+            return null;
+        }
+    }
+
+    private static int read(SettableRangedValue setting) {
+        return (int) Math.round(readRaw(setting));
+    }
+
+    private static double readRaw(SettableRangedValue setting) {
+        setting.markInterested();
+        return setting.getRaw();
+    }
+
+    public int getBankSize() {
+        return bankSize;
+    }
+
+    public int getSceneCount() {
+        return sceneCount;
+    }
+
+    public int getRemoteControlCount() {
+        return remoteControlCount;
+    }
+
+    public int getClientPortStart() {
+        return clientPortStart;
+    }
+
+    public int getClientPortEnd() {
+        return clientPortEnd;
+    }
+
+    public boolean isPortAllowed(int port) {
+        return port >= clientPortStart && port <= clientPortEnd;
+    }
+
+    // Only applies to clients on other hosts; local clients are limited by port alone
+    public boolean isHostAllowed(String host) {
+        return allowedHosts.contains(host);
+    }
+
+    public Path getSocketDirectory() {
+        return socketDirectory;
+    }
+
+    // Absolute paths strictly inside the socket directory, after resolving "." and ".."
+    public boolean isSocketAllowed(Path path) {
+        return socketDirectory != null && path.isAbsolute()
+                && path.normalize().startsWith(socketDirectory) && !path.normalize().equals(socketDirectory);
+    }
+
+    public int getClientTimeoutMs() {
+        return clientTimeoutMs;
+    }
+
+    public Throttle getRemoteControlThrottle() {
+        return remoteControlThrottle;
+    }
+
+    public Throttle getVolumeThrottle() {
+        return volumeThrottle;
+    }
+}
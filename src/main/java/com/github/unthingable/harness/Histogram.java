@@ -0,0 +1,46 @@
+package com.github.unthingable.harness;
+
+// Durations in power-of-two microsecond buckets: bucket b counts durations below 2^b µs.
+// Percentiles are reported as the upper bound of their bucket.
+public class Histogram {
+
+    private static final int BUCKETS = 32;
+
+    private final long[] buckets = new long[BUCKETS];
+    private long count;
+    private long totalNanos;
+    private long maxNanos;
+
+    public void record(long nanos) {
+        long micros = nanos / 1000;
+        int bucket = micros == 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets[bucket]++;
+        count++;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public int meanMicros() {
+        return count > 0 ? (int) (totalNanos / count / 1000) : 0;
+    }
+
+    public int maxMicros() {
+        return (int) (maxNanos / 1000);
+    }
+
+    public int percentileMicros(double p) {
+        long rank = (long) Math.ceil(count * p);
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += buckets[b];
+            if (seen >= rank && seen > 0) {
+                return (int) Math.min(1L << b, maxMicros());
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.unthingable.harness;
+
+import com.bitwig.extension.controller.api.CursorDevice;
+import com.bitwig.extension.controller.api.CursorTrack;
+import com.bitwig.extension.controller.api.DeviceBank;
+import com.bitwig.extension.controller.api.TrackBank;
+
+// Selects tracks and devices by index in a constant number of host calls: a one-item bank is scrolled
+// to the index and the cursor is pointed at that item once the scroll has landed.
+public class IndexSelector {
+
+    private final CursorTrack cursorTrack;
+    private final CursorDevice cursorDevice;
+    private final TrackBank trackBank;
+    private final DeviceBank deviceBank;
+    private int pendingTrack = -1;
+    private int pendingDevice = -1;
+
+    public IndexSelector(TrackBank trackBank, DeviceBank deviceBank, CursorTrack cursorTrack, CursorDevice cursorDevice) {
+        this.trackBank = trackBank;
+        this.deviceBank = deviceBank;
+        this.cursorTrack = cursorTrack;
+        this.cursorDevice = cursorDevice;
+
+        trackBank.scrollPosition().addValueObserver(position -> {
+            if (position == pendingTrack) {
+                pendingTrack = -1;
+                cursorTrack.selectChannel(trackBank.getItemAt(0));
+            }
+        });
+        deviceBank.scrollPosition().addValueObserver(position -> {
+            if (position == pendingDevice) {
+                pendingDevice = -1;
+                cursorDevice.selectDevice(deviceBank.getItemAt(0));
+            }
+        });
+
+        trackBank.scrollPosition().markInterested();
+        trackBank.itemCount().markInterested();
+        deviceBank.scrollPosition().markInterested();
+        deviceBank.itemCount().markInterested();
+    }
+
+    public boolean selectTrack(int index) {
+        if (index < 0 || index >= trackBank.itemCount().get()) {
+            return false;
+        }
+        if (trackBank.scrollPosition().get() == index) {
+            pendingTrack = -1;
+            cursorTrack.selectChannel(trackBank.getItemAt(0));
+        } else {
+            pendingTrack = index;
+            trackBank.scrollPosition().set(index);
+        }
+        return true;
+    }
+
+    public boolean selectDevice(int index) {
+        if (index < 0 || index >= deviceBank.itemCount().get()) {
+            return false;
+        }
+        if (deviceBank.scrollPosition().get() == index) {
+            pendingDevice = -1;
+            cursorDevice.selectDevice(deviceBank.getItemAt(0));
+        } else {
+            pendingDevice = index;
+            deviceBank.scrollPosition().set(index);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.unthingable.harness;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Always-on counters for the host thread: traffic per address, and durations of command handlers
+// and observer flushes. Per-client send counters live in ClientQueue, on the sender thread.
+public class Metrics {
+
+    private static final int BROADCASTS = 0;
+    private static final int MESSAGES = 1;
+    private static final int BYTES = 2;
+    private static final int SUPPRESSED = 3;
+
+    private final Map<String, long[]> addresses = new LinkedHashMap<>();
+    private final Map<String, Histogram> commands = new LinkedHashMap<>();
+    private final Map<String, Histogram> observers = new LinkedHashMap<>();
+
+    // One broadcast or reply: how many clients it was queued for, and how many it was not sent to
+    // because they already had it or it was held back
+    public void recordMessage(String address, int messages, long bytes, int suppressed) {
+        long[] counters = addresses.get(address);
+        if (counters == null) {
+            counters = new long[4];
+            addresses.put(address, counters);
+        }
+        counters[BROADCASTS]++;
+        counters[MESSAGES] += messages;
+        counters[BYTES] += bytes;
+        counters[SUPPRESSED] += suppressed;
+    }
+
+    public Histogram command(String address) {
+        return commands.computeIfAbsent(address, a -> new Histogram());
+    }
+
+    public Histogram observer(String name) {
+        return observers.computeIfAbsent(name, n -> new Histogram());
+    }
+
+    public void report(OscSink sink) {
+        for (Map.Entry<String, long[]> entry : addresses.entrySet()) {
+            long[] counters = entry.getValue();
+            sink.send("/harness/stats/address", entry.getKey(),
+                    counters[BROADCASTS], counters[MESSAGES], counters[BYTES], counters[SUPPRESSED]);
+        }
+        report(sink, "/harness/stats/command", commands);
+        report(sink, "/harness/stats/observer", observers);
+    }
+
+    private static void report(OscSink sink, String address, Map<String, Histogram> histograms) {
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            Histogram histogram = entry.getValue();
+            if (histogram.getCount() > 0) {
+                sink.send(address, entry.getKey(), histogram.getCount(), histogram.meanMicros(),
+                        histogram.percentileMicros(0.5), histogram.percentileMicros(0.99), histogram.maxMicros());
+            }
+        }
+    }
+}
@@ -1,31 +1,184 @@
 package com.github.unthingable.harness;
 
+import com.bitwig.extension.controller.api.ControllerHost;
 import com.bitwig.extension.controller.api.MidiIn;
 import com.bitwig.extension.controller.api.MidiOut;
+import com.github.unthingable.harness.jfr.MidiEvent;
+
+import java.nio.ByteBuffer;
 
 public class MidiProxy {
 
+    // Keeps each chunk message well below a typical 1500-byte MTU
+    public static final int SYSEX_CHUNK_SIZE = 1024;
+    // /midi/send_batch event: offset ms (int), status, data1, data2, reserved
+    public static final int BATCH_EVENT_SIZE = 8;
+    public static final int MAX_BATCH_OFFSET_MS = 60_000;
+    // Incoming events per /midi/batch/in message, keeping it below a typical MTU
+    public static final int MIDI_BATCH_MAX_EVENTS = 128;
+    private static final String MIDI_IN = "/midi/in";
+    private static final String MIDI_BATCH_IN = "/midi/batch/in";
+    private static final String SYSEX_BLOB_IN = "/midi/sysex/blob/in";
+
+    private final ControllerHost host;
     private final MidiOut midiOut;
     private final ClientManager clientManager;
+    // /midi/in <channel> <status> <data1> <data2>, pre-encoded so that forwarding allocates nothing
+    private final OscTemplate midiInTemplate = new OscTemplate(MIDI_IN, "iiii");
+    private final SysexAssembler sysexAssembler = new SysexAssembler();
+    // Decoded incoming sysex, reused across messages; chunks are encoded straight from it
+    private ByteBuffer sysexBuffer = ByteBuffer.allocate(4096);
+    private int nextSysexId = 0;
+    // Incoming MIDI since the last flush, in the /midi/send_batch layout with microsecond offsets
+    private final ByteBuffer midiBatch = ByteBuffer.allocate(MIDI_BATCH_MAX_EVENTS * BATCH_EVENT_SIZE);
+    private final long startNanos = System.nanoTime();
+    private long midiBatchBase;
 
-    public MidiProxy(MidiIn midiIn, MidiOut midiOut, ClientManager clientManager) {
+    public MidiProxy(ControllerHost host, MidiIn midiIn, MidiOut midiOut, ClientManager clientManager) {
+        this.host = host;
         this.midiOut = midiOut;
         this.clientManager = clientManager;
 
-        midiIn.setMidiCallback((statusByte, data1, data2) -> {
-            int channel = statusByte & 0x0F;
-            int status = statusByte & 0xF0;
-            clientManager.broadcast("/midi/in", channel, status, data1, data2);
-        });
+        midiIn.setMidiCallback(this::onMidi);
+        midiIn.setSysexCallback(this::onSysex);
+    }
+
+    private void onMidi(int statusByte, int data1, int data2) {
+        MidiEvent event = new MidiEvent();
+        event.begin();
+        if (clientManager.isRouted(MIDI_BATCH_IN)) {
+            long micros = (System.nanoTime() - startNanos) / 1000;
+            if (midiBatch.position() == 0) {
+                midiBatchBase = micros;
+                host.requestFlush();
+            }
+            midiBatch.putInt((int) (micros - midiBatchBase))
+                    .put((byte) statusByte).put((byte) data1).put((byte) data2).put((byte) 0);
+            if (!midiBatch.hasRemaining()) {
+                flushMidiBatch();
+            }
+        }
+        clientManager.broadcast(midiInTemplate.setInt(0, statusByte & 0x0F).setInt(1, statusByte & 0xF0)
+                .setInt(2, data1).setInt(3, data2));
+        commit(event, "in", statusByte, 3);
+    }
+
+    // Called at the end of every host tick, and when the batch is full
+    public void flushMidiBatch() {
+        if (midiBatch.position() == 0) {
+            return;
+        }
+        midiBatch.flip();
+        clientManager.broadcast(MIDI_BATCH_IN, midiBatchBase, midiBatch);
+        midiBatch.clear();
+    }
+
+    private void onSysex(String hex) {
+        MidiEvent event = new MidiEvent();
+        event.begin();
+        // Keeps short messages and sysex in the order they were received
+        flushMidiBatch();
+        clientManager.broadcast("/midi/sysex/in", hex);
+        int length = hex.length() / 2;
+        if (clientManager.isRouted(SYSEX_BLOB_IN)) {
+            broadcastSysexBlob(hex, length);
+        }
+        commit(event, "in", 0xF0, length);
+    }
 
-        midiIn.setSysexCallback(hex -> clientManager.broadcast("/midi/sysex/in", hex));
+    private void broadcastSysexBlob(String hex, int length) {
+        if (sysexBuffer.capacity() < length) {
+            sysexBuffer = ByteBuffer.allocate(Integer.highestOneBit(length) << 1);
+        }
+        byte[] bytes = sysexBuffer.array();
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) ((Character.digit(hex.charAt(2 * i), 16) << 4) | Character.digit(hex.charAt(2 * i + 1), 16));
+        }
+        int id = nextSysexId++;
+        int count = Math.max(1, (length + SYSEX_CHUNK_SIZE - 1) / SYSEX_CHUNK_SIZE);
+        for (int i = 0; i < count; i++) {
+            int offset = i * SYSEX_CHUNK_SIZE;
+            sysexBuffer.clear().position(offset).limit(Math.min(length, offset + SYSEX_CHUNK_SIZE));
+            clientManager.broadcast(SYSEX_BLOB_IN, id, i, count, sysexBuffer);
+        }
     }
 
     public void sendMidi(int channel, int status, int data1, int data2) {
+        MidiEvent event = new MidiEvent();
+        event.begin();
         midiOut.sendMidi(status | channel, data1, data2);
+        commit(event, "out", status | channel, 3);
+    }
+
+    // Events with the same offset go out together in one host task. Each task is scheduled relative
+    // to the arrival of the batch, so delays don't add up. The whole batch is rejected if any event is invalid.
+    public void sendMidiBatch(byte[] events) {
+        if (events.length % BATCH_EVENT_SIZE != 0) {
+            throw new IllegalArgumentException("MIDI batch size " + events.length
+                    + " is not a multiple of " + BATCH_EVENT_SIZE);
+        }
+        ByteBuffer buf = ByteBuffer.wrap(events);
+        int previous = 0;
+        for (int i = 0; i < events.length; i += BATCH_EVENT_SIZE) {
+            int offset = buf.getInt(i);
+            if (offset < previous || offset > MAX_BATCH_OFFSET_MS) {
+                throw new IllegalArgumentException("MIDI batch event " + i / BATCH_EVENT_SIZE + " has offset "
+                        + offset + " ms; offsets must be ascending and at most " + MAX_BATCH_OFFSET_MS);
+            }
+            previous = offset;
+        }
+        int start = 0;
+        while (start < events.length) {
+            int offset = buf.getInt(start);
+            int end = start + BATCH_EVENT_SIZE;
+            while (end < events.length && buf.getInt(end) == offset) {
+                end += BATCH_EVENT_SIZE;
+            }
+            if (offset == 0) {
+                sendEvents(events, start, end);
+            } else {
+                int from = start;
+                int to = end;
+                host.scheduleTask(() -> sendEvents(events, from, to), offset);
+            }
+            start = end;
+        }
+    }
+
+    private void sendEvents(byte[] events, int start, int end) {
+        for (int i = start; i < end; i += BATCH_EVENT_SIZE) {
+            MidiEvent event = new MidiEvent();
+            event.begin();
+            midiOut.sendMidi(events[i + 4] & 0xFF, events[i + 5] & 0xFF, events[i + 6] & 0xFF);
+            commit(event, "out", events[i + 4] & 0xFF, 3);
+        }
     }
 
     public void sendSysex(String hex) {
+        MidiEvent event = new MidiEvent();
+        event.begin();
         midiOut.sendSysex(hex);
+        commit(event, "out", 0xF0, hex.length() / 2);
+    }
+
+    // Sends once the last chunk of the message has arrived
+    public void sendSysexChunk(int id, int index, int count, byte[] data) {
+        byte[] sysex = sysexAssembler.add(id, index, count, data);
+        if (sysex != null) {
+            MidiEvent event = new MidiEvent();
+            event.begin();
+            midiOut.sendSysex(sysex);
+            commit(event, "out", 0xF0, sysex.length);
+        }
+    }
+
+    // Fields are only filled in when the event is enabled in the recording settings
+    private static void commit(MidiEvent event, String direction, int status, int bytes) {
+        if (event.shouldCommit()) {
+            event.direction = direction;
+            event.status = status;
+            event.bytes = bytes;
+            event.commit();
+        }
     }
 }
@@ -0,0 +1,92 @@
+package com.github.unthingable.harness;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Minimal OSC 1.0 decoder for packets carried inside harness commands (e.g. /batch)
+public final class OscDecoder {
+
+    private OscDecoder() {
+    }
+
+    public record Message(String address, String typeTag, List<Object> args) {
+    }
+
+    // Messages of a packet in order, flattening nested bundles
+    public static List<Message> decodePacket(byte[] packet) {
+        List<Message> messages = new ArrayList<>();
+        try {
+            decode(ByteBuffer.wrap(packet), messages);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated OSC packet", e);
+        }
+        return messages;
+    }
+
+    private static void decode(ByteBuffer buf, List<Message> messages) {
+        if (buf.remaining() >= 8 && buf.get(buf.position()) == '#') {
+            if (!"#bundle".equals(readString(buf))) {
+                throw new IllegalArgumentException("Not an OSC bundle");
+            }
+            buf.getLong(); // time tag; elements are executed immediately
+            while (buf.hasRemaining()) {
+                int size = buf.getInt();
+                ByteBuffer element = buf.slice(buf.position(), size);
+                buf.position(buf.position() + size);
+                decode(element, messages);
+            }
+        } else {
+            messages.add(decodeMessage(buf));
+        }
+    }
+
+    private static Message decodeMessage(ByteBuffer buf) {
+        String address = readString(buf);
+        String typeTag = buf.hasRemaining() ? readString(buf) : ",";
+        if (!typeTag.startsWith(",")) {
+            throw new IllegalArgumentException("Bad type tag " + typeTag);
+        }
+        List<Object> args = new ArrayList<>();
+        for (int i = 1; i < typeTag.length(); i++) {
+            switch (typeTag.charAt(i)) {
+                case 'i' -> args.add(buf.getInt());
+                case 'h' -> args.add(buf.getLong());
+                case 'f' -> args.add(buf.getFloat());
+                case 'd' -> args.add(buf.getDouble());
+                case 's' -> args.add(readString(buf));
+                case 'b' -> args.add(readBlob(buf));
+                case 'T' -> args.add(Boolean.TRUE);
+                case 'F' -> args.add(Boolean.FALSE);
+                case 'N' -> args.add(null);
+                default -> throw new IllegalArgumentException("Unsupported type " + typeTag.charAt(i));
+            }
+        }
+        return new Message(address, typeTag, args);
+    }
+
+    private static String readString(ByteBuffer buf) {
+        int start = buf.position();
+        int end = start;
+        while (buf.get(end) != 0) {
+            end++;
+        }
+        String s = new String(buf.array(), buf.arrayOffset() + start, end - start, StandardCharsets.UTF_8);
+        buf.position(start + ((end - start + 4) & ~3));
+        return s;
+    }
+
+    private static byte[] readBlob(ByteBuffer buf) {
+        int size = buf.getInt();
+        // Checked before allocating, so a corrupt size can't exhaust the heap
+        if (size < 0 || size > buf.remaining()) {
+            throw new IllegalArgumentException("Truncated OSC packet");
+        }
+        byte[] blob = new byte[size];
+        buf.get(blob);
+        buf.position(buf.position() + ((4 - size % 4) % 4));
+        return blob;
+    }
+}
@@ -0,0 +1,173 @@
+package com.github.unthingable.harness;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Minimal OSC 1.0 encoder, so that a message can be encoded once and the bytes reused
+public final class OscEncoder {
+
+    public static final int BUNDLE_HEADER_SIZE = 16;
+    // Trailing int argument of sequenced messages, patched in just before sending
+    public static final int SEQUENCE_SIZE = 4;
+
+    private static final byte[] BUNDLE_TAG = "#bundle\0".getBytes(StandardCharsets.US_ASCII);
+    private static final long TIME_TAG_IMMEDIATE = 1L;
+
+    private OscEncoder() {
+    }
+
+    public static int messageSize(String address, Object... args) {
+        return messageSize(address, false, args);
+    }
+
+    public static void writeMessage(ByteBuffer buf, String address, Object... args) {
+        writeMessage(buf, address, false, args);
+    }
+
+    public static byte[] encodeMessage(String address, Object... args) {
+        return encodeMessage(address, false, args);
+    }
+
+    // Message with an extra trailing int argument, initially 0, for the sequence number
+    public static byte[] encodeSequencedMessage(String address, Object... args) {
+        return encodeMessage(address, true, args);
+    }
+
+    // Big-endian, written directly so that the sender thread allocates nothing per message
+    public static void patchSequence(byte[] message, int seq) {
+        int offset = message.length - SEQUENCE_SIZE;
+        message[offset] = (byte) (seq >>> 24);
+        message[offset + 1] = (byte) (seq >>> 16);
+        message[offset + 2] = (byte) (seq >>> 8);
+        message[offset + 3] = (byte) seq;
+    }
+
+    private static byte[] encodeMessage(String address, boolean sequenced, Object... args) {
+        ByteBuffer buf = ByteBuffer.allocate(messageSize(address, sequenced, args));
+        writeMessage(buf, address, sequenced, args);
+        return buf.array();
+    }
+
+    private static int messageSize(String address, boolean sequenced, Object... args) {
+        int tags = args.length + (sequenced ? 1 : 0);
+        int size = stringSize(address) + padded(tags + 2) + (sequenced ? SEQUENCE_SIZE : 0);
+        for (Object arg : args) {
+            size += argSize(arg);
+        }
+        return size;
+    }
+
+    private static void writeMessage(ByteBuffer buf, String address, boolean sequenced, Object... args) {
+        writeString(buf, address);
+        buf.put((byte) ',');
+        for (Object arg : args) {
+            buf.put(typeTag(arg));
+        }
+        if (sequenced) {
+            buf.put((byte) 'i');
+        }
+        pad(buf, args.length + (sequenced ? 2 : 1));
+        for (Object arg : args) {
+            writeArg(buf, arg);
+        }
+        if (sequenced) {
+            buf.putInt(0);
+        }
+    }
+
+    public static void writeBundleHeader(ByteBuffer buf) {
+        buf.put(BUNDLE_TAG);
+        buf.putLong(TIME_TAG_IMMEDIATE);
+    }
+
+    public static void writeBundleElement(ByteBuffer buf, byte[] message) {
+        buf.putInt(message.length);
+        buf.put(message);
+    }
+
+    public static void writeString(ByteBuffer buf, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        buf.put(bytes);
+        pad(buf, bytes.length);
+    }
+
+    private static void writeArg(ByteBuffer buf, Object arg) {
+        if (arg instanceof Integer i) {
+            buf.putInt(i);
+        } else if (arg instanceof Long l) {
+            buf.putLong(l);
+        } else if (arg instanceof Float f) {
+            buf.putFloat(f);
+        } else if (arg instanceof Double d) {
+            buf.putDouble(d);
+        } else if (arg instanceof byte[] blob) {
+            buf.putInt(blob.length);
+            buf.put(blob);
+            zeros(buf, padded(blob.length) - blob.length);
+        } else if (arg instanceof ByteBuffer blob) {
+            // The remaining bytes, copied without moving the source position
+            int length = blob.remaining();
+            buf.putInt(length);
+            buf.put(buf.position(), blob, blob.position(), length);
+            buf.position(buf.position() + length);
+            zeros(buf, padded(length) - length);
+        } else if (arg instanceof Boolean || arg == null) {
+            // Encoded in the type tag only
+        } else {
+            writeString(buf, arg.toString());
+        }
+    }
+
+    private static byte typeTag(Object arg) {
+        if (arg instanceof Integer) {
+            return 'i';
+        } else if (arg instanceof Long) {
+            return 'h';
+        } else if (arg instanceof Float) {
+            return 'f';
+        } else if (arg instanceof Double) {
+            return 'd';
+        } else if (arg instanceof byte[] || arg instanceof ByteBuffer) {
+            return 'b';
+        } else if (arg instanceof Boolean b) {
+            return b ? (byte) 'T' : (byte) 'F';
+        } else if (arg == null) {
+            return 'N';
+        }
+        return 's';
+    }
+
+    private static int argSize(Object arg) {
+        if (arg instanceof Integer || arg instanceof Float) {
+            return 4;
+        } else if (arg instanceof Long || arg instanceof Double) {
+            return 8;
+        } else if (arg instanceof byte[] blob) {
+            return 4 + padded(blob.length);
+        } else if (arg instanceof ByteBuffer blob) {
+            return 4 + padded(blob.remaining());
+        } else if (arg instanceof Boolean || arg == null) {
+            return 0;
+        }
+        return stringSize(arg.toString());
+    }
+
+    private static int stringSize(String s) {
+        return padded(s.getBytes(StandardCharsets.UTF_8).length + 1);
+    }
+
+    // Strings are null-terminated, so (length + terminator) is padded to the next 4-byte boundary
+    private static void pad(ByteBuffer buf, int length) {
+        zeros(buf, padded(length + 1) - length);
+    }
+
+    private static void zeros(ByteBuffer buf, int count) {
+        for (int i = 0; i < count; i++) {
+            buf.put((byte) 0);
+        }
+    }
+
+    private static int padded(int length) {
+        return (length + 3) & ~3;
+    }
+}
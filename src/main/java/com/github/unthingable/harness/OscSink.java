@@ -0,0 +1,8 @@
+package com.github.unthingable.harness;
+
+// Destination for state messages written by snapshot providers
+@FunctionalInterface
+public interface OscSink {
+
+    void send(String address, Object... args);
+}
@@ -0,0 +1,110 @@
+package com.github.unthingable.harness;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+// An event message of fixed layout whose address and type tags are encoded once. Arguments are set in
+// place, and each broadcast copies them into a pooled message that the sender thread hands back once
+// every client has been sent it, so a steady stream of events allocates nothing.
+// Only for events: state messages are kept by client shadows and replay rings, so they use StateTemplate.
+public final class OscTemplate {
+
+    // Messages kept for reuse; more than this in flight at once are left to the garbage collector
+    private static final int MAX_POOLED = 1024;
+
+    private final String address;
+    private final String typeTags;
+    private final int[] offsets;
+    // Host thread only: the arguments being set for the next broadcast
+    private final ByteBuffer scratch;
+    private final ArrayDeque<OutboundMessage> pool = new ArrayDeque<>();
+
+    // Type tags without the leading comma; i, f, h and d only, so every argument has a fixed offset
+    public OscTemplate(String address, String typeTags) {
+        if (StateSchema.isState(address)) {
+            throw new IllegalArgumentException(address + " is state; templates are for events only");
+        }
+        this.address = address;
+        this.typeTags = typeTags;
+        Object[] zeros = new Object[typeTags.length()];
+        for (int i = 0; i < zeros.length; i++) {
+            zeros[i] = switch (typeTags.charAt(i)) {
+                case 'i' -> 0;
+                case 'f' -> 0.0f;
+                case 'h' -> 0L;
+                case 'd' -> 0.0;
+                default -> throw new IllegalArgumentException("Type tag " + typeTags.charAt(i)
+                        + " has no fixed size; templates take i, f, h and d");
+            };
+        }
+        byte[] encoded = OscEncoder.encodeMessage(address, zeros);
+        offsets = new int[zeros.length];
+        int offset = encoded.length;
+        for (int i = zeros.length - 1; i >= 0; i--) {
+            offset -= zeros[i] instanceof Long || zeros[i] instanceof Double ? 8 : 4;
+            offsets[i] = offset;
+        }
+        scratch = ByteBuffer.wrap(encoded);
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public int size() {
+        return scratch.capacity();
+    }
+
+    public OscTemplate setInt(int index, int value) {
+        check(index, 'i');
+        scratch.putInt(offsets[index], value);
+        return this;
+    }
+
+    public OscTemplate setFloat(int index, float value) {
+        check(index, 'f');
+        scratch.putFloat(offsets[index], value);
+        return this;
+    }
+
+    public OscTemplate setLong(int index, long value) {
+        check(index, 'h');
+        scratch.putLong(offsets[index], value);
+        return this;
+    }
+
+    public OscTemplate setDouble(int index, double value) {
+        check(index, 'd');
+        scratch.putDouble(offsets[index], value);
+        return this;
+    }
+
+    private void check(int index, char tag) {
+        if (typeTags.charAt(index) != tag) {
+            throw new IllegalArgumentException(address + " argument " + index + " is " + typeTags.charAt(index)
+                    + ", not " + tag);
+        }
+    }
+
+    // A message holding the arguments set so far, to be sent to the given number of clients
+    OutboundMessage take(int references) {
+        OutboundMessage message;
+        synchronized (pool) {
+            message = pool.poll();
+        }
+        if (message == null) {
+            message = OutboundMessage.of(this, new byte[scratch.capacity()]);
+        }
+        System.arraycopy(scratch.array(), 0, message.getData(), 0, scratch.capacity());
+        message.retain(references);
+        return message;
+    }
+
+    void recycle(OutboundMessage message) {
+        synchronized (pool) {
+            if (pool.size() < MAX_POOLED) {
+                pool.add(message);
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.github.unthingable.harness;
+
+// An encoded packet queued for sending; messages with the same non-null key replace each other.
+// Sequenced messages end in a placeholder int that the sender fills with the client's next sequence number.
+public final class OutboundMessage {
+
+    private final Object key;
+    private final byte[] data;
+    private final boolean sequenced;
+    // Pooled messages go back to their template once sent to every client they were queued for
+    private final OscTemplate template;
+    // Only the sender thread releases, after the queue handed the message over
+    private int references;
+
+    public OutboundMessage(Object key, byte[] data) {
+        this(key, data, false);
+    }
+
+    public OutboundMessage(Object key, byte[] data, boolean sequenced) {
+        this.key = key;
+        this.data = data;
+        this.sequenced = sequenced;
+        this.template = null;
+    }
+
+    private OutboundMessage(OscTemplate template, byte[] data) {
+        this.key = null;
+        this.data = data;
+        this.sequenced = false;
+        this.template = template;
+    }
+
+    // Events, replies and bundles: every one is delivered, none replaces another
+    public static OutboundMessage unkeyed(byte[] data) {
+        return new OutboundMessage(null, data, false);
+    }
+
+    // A pooled event message, returned to its template once released by every client it was queued for
+    static OutboundMessage of(OscTemplate template, byte[] data) {
+        return new OutboundMessage(template, data);
+    }
+
+    public boolean isSequenced() {
+        return sequenced;
+    }
+
+    public Object getKey() {
+        return key;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    void retain(int references) {
+        this.references = references;
+    }
+
+    // Called after each send; the last one returns a pooled message to its template
+    void release() {
+        if (template != null && --references == 0) {
+            template.recycle(this);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.github.unthingable.harness;
+
+import com.bitwig.extension.controller.api.ControllerHost;
+import com.bitwig.extension.controller.api.SettableRangedValue;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Parameter ramps stepped on the host timer. Values depend only on the step number, not on when the
+// timer fires, so a ramp always sets the same sequence of values and ends exactly on its target.
+public class RampScheduler {
+
+    public static final int STEP_MS = 10;
+
+    private final ControllerHost host;
+    // A new ramp on the same target replaces the running one
+    private final Map<String, Ramp> ramps = new LinkedHashMap<>();
+    private boolean running = false;
+
+    public RampScheduler(ControllerHost host) {
+        this.host = host;
+    }
+
+    // Values are normalized (0..1); the first step is applied immediately
+    public void start(String target, SettableRangedValue value, double from, double to, int durationMs, Curve curve) {
+        int steps = Math.max(1, (durationMs + STEP_MS - 1) / STEP_MS);
+        Ramp ramp = new Ramp(value, clamp(from), clamp(to), steps, curve);
+        ramps.put(target, ramp);
+        if (ramp.advance()) {
+            ramps.remove(target);
+        }
+        if (!running && !ramps.isEmpty()) {
+            running = true;
+            host.scheduleTask(this::step, STEP_MS);
+        }
+    }
+
+    private void step() {
+        for (Iterator<Ramp> it = ramps.values().iterator(); it.hasNext(); ) {
+            if (it.next().advance()) {
+                it.remove();
+            }
+        }
+        if (ramps.isEmpty()) {
+            running = false;
+        } else {
+            host.scheduleTask(this::step, STEP_MS);
+        }
+    }
+
+    private static double clamp(double value) {
+        return Math.max(0.0, Math.min(1.0, value));
+    }
+
+    public enum Curve {
+        LINEAR, EASE_IN, EASE_OUT, S_CURVE;
+
+        public static Curve parse(String name) {
+            for (Curve curve : values()) {
+                if (curve.name().equalsIgnoreCase(name)) {
+                    return curve;
+                }
+            }
+            return null;
+        }
+
+        private double apply(double t) {
+            return switch (this) {
+                case LINEAR -> t;
+                case EASE_IN -> t * t;
+                case EASE_OUT -> 1 - (1 - t) * (1 - t);
+                case S_CURVE -> t * t * (3 - 2 * t);
+            };
+        }
+    }
+
+    private static final class Ramp {
+        private final SettableRangedValue value;
+        private final double from;
+        private final double to;
+        private final int steps;
+        private final Curve curve;
+        private int step = 0;
+
+        private Ramp(SettableRangedValue value, double from, double to, int steps, Curve curve) {
+            this.value = value;
+            this.from = from;
+            this.to = to;
+            this.steps = steps;
+            this.curve = curve;
+        }
+
+        // Sets the value for the current step; returns true once the target has been set
+        private boolean advance() {
+            if (step >= steps) {
+                value.set(to);
+                return true;
+            }
+            value.set(from + (to - from) * curve.apply((double) step / steps));
+            step++;
+            return false;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.unthingable.harness;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Recently sent sequenced messages of one client, written by the sender thread and read on /resync
+public class ReplayRing {
+
+    private final OutboundMessage[] messages;
+    private final int[] seqs;
+    private int head = 0;
+    private int size = 0;
+    private int lastSeq = 0;
+
+    public ReplayRing(int capacity) {
+        this.messages = new OutboundMessage[capacity];
+        this.seqs = new int[capacity];
+    }
+
+    public synchronized void add(int seq, OutboundMessage message) {
+        messages[head] = message;
+        seqs[head] = seq;
+        head = (head + 1) % messages.length;
+        size = Math.min(size + 1, messages.length);
+        lastSeq = seq;
+    }
+
+    // Latest message per key sent after the given sequence number, oldest first, or null if the gap is older than
+    // the ring. Field deltas sent before a later full message for their entity are left out: replaying them
+    // after it would undo the full message.
+    public synchronized List<OutboundMessage> since(int seq) {
+        if (seq == lastSeq) {
+            return List.of();
+        }
+        int oldest = (head - size + messages.length) % messages.length;
+        // Ahead of us (e.g. the harness restarted) or older than anything kept
+        if (seq > lastSeq || size == 0 || seqs[oldest] > seq + 1) {
+            return null;
+        }
+        // Newest first, so the first message seen for a key or entity is the one that counts
+        Set<Object> seen = new HashSet<>();
+        List<OutboundMessage> latest = new ArrayList<>();
+        for (int i = size - 1; i >= 0; i--) {
+            int slot = (oldest + i) % messages.length;
+            if (seqs[slot] <= seq) {
+                break;
+            }
+            Object key = messages[slot].getKey();
+            Object entity = StateSchema.entityOf(key);
+            if (seen.add(key) && (entity == key || !seen.contains(entity))) {
+                latest.add(messages[slot]);
+            }
+        }
+        Collections.reverse(latest);
+        return latest;
+    }
+}
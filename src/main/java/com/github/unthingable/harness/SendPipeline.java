@@ -0,0 +1,135 @@
+package com.github.unthingable.harness;
+
+import com.github.unthingable.harness.jfr.SendEvent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.List;
+
+// Drains client queues on its own thread so that slow or broken clients never stall the host thread
+public class SendPipeline {
+
+    // Messages sent from one client before moving on to the next
+    private static final int BURST = 32;
+    // Largest UDP payload; every packet the harness sends fits, bigger ones are sent from their own array
+    private static final int MAX_PACKET = 65507;
+
+    private final ArrayDeque<ClientQueue> ready = new ArrayDeque<>();
+    // Sender thread only: packets are copied here rather than wrapped, so sends allocate nothing
+    private final ByteBuffer packet = ByteBuffer.allocateDirect(MAX_PACKET);
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    public SendPipeline() {
+        thread = new Thread(this::run, "harness-sender");
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void enqueue(ClientQueue queue, OutboundMessage message) {
+        if (queue.offer(message)) {
+            signal(queue);
+        }
+    }
+
+    public void enqueueReplayed(ClientQueue queue, List<OutboundMessage> messages) {
+        if (queue.offerReplayed(messages)) {
+            signal(queue);
+        }
+    }
+
+    // Resumes a queue whose connection can take packets again
+    public void wake(ClientQueue queue) {
+        if (!queue.isEmpty()) {
+            signal(queue);
+        }
+    }
+
+    private void signal(ClientQueue queue) {
+        synchronized (ready) {
+            ready.add(queue);
+            ready.notify();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            ClientQueue queue;
+            synchronized (ready) {
+                while (ready.isEmpty()) {
+                    try {
+                        ready.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                queue = ready.poll();
+            }
+            for (int i = 0; i < BURST; i++) {
+                // A stream connection with a full write buffer is resumed by its writable listener
+                if (!queue.getConnection().isWritable()) {
+                    break;
+                }
+                OutboundMessage message = queue.poll();
+                if (message == null) {
+                    break;
+                }
+                send(queue, message);
+            }
+            // Re-check under the lock: an offer that raced with the last poll saw a non-empty queue
+            synchronized (ready) {
+                if (!queue.isEmpty() && queue.getConnection().isWritable() && !ready.contains(queue)) {
+                    ready.add(queue);
+                }
+            }
+        }
+    }
+
+    private void send(ClientQueue queue, OutboundMessage message) {
+        SendEvent event = new SendEvent();
+        event.begin();
+        int seq = -1;
+        try {
+            if (message.isSequenced()) {
+                // Numbered at send time so that conflated messages never leave gaps
+                seq = queue.nextSequence();
+                OscEncoder.patchSequence(message.getData(), seq);
+                queue.getReplayRing().add(seq, message);
+            }
+            byte[] data = message.getData();
+            if (data.length <= MAX_PACKET) {
+                packet.clear();
+                packet.put(data).flip();
+                queue.getConnection().send(packet);
+            } else {
+                queue.getConnection().send(ByteBuffer.wrap(data));
+            }
+            queue.recordSent(data.length);
+        } catch (IOException e) {
+            // UDP send failure — count and continue
+            queue.recordFailure();
+            event.failed = true;
+        }
+        message.release();
+        if (event.shouldCommit()) {
+            event.port = queue.getConnection().getPort();
+            event.bytes = message.getData().length;
+            event.sequence = seq;
+            event.commit();
+        }
+    }
+}
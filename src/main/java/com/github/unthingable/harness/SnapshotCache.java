@@ -0,0 +1,57 @@
+package com.github.unthingable.harness;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+// Encoded connect snapshots, one per distinct subscription set, rebuilt only after observed state has changed.
+// Each keeps the arguments it encoded per entity key, which become the client's shadow: observers may have
+// changed since without broadcasting yet, so the shadow can't be read from them.
+public class SnapshotCache {
+
+    // Stays under the 9216-byte default UDP datagram limit on macOS
+    public static final int MAX_BUNDLE_SIZE = 8192;
+
+    private final List<Consumer<OscSink>> providers;
+    private final Map<Set<String>, Snapshot> snapshots = new HashMap<>();
+
+    public SnapshotCache(List<Consumer<OscSink>> providers) {
+        this.providers = providers;
+    }
+
+    public void invalidate() {
+        snapshots.clear();
+    }
+
+    public Snapshot get(Set<String> subscriptions) {
+        Snapshot result = snapshots.get(subscriptions);
+        if (result == null) {
+            result = build(subscriptions);
+            snapshots.put(Set.copyOf(subscriptions), result);
+        }
+        return result;
+    }
+
+    private Snapshot build(Set<String> subscriptions) {
+        BundleBuilder bundles = new BundleBuilder(MAX_BUNDLE_SIZE);
+        Map<Object, Object[]> entries = new HashMap<>();
+        OscSink sink = (address, args) -> {
+            if (SubscriptionTrie.covers(subscriptions, address)) {
+                // Snapshot state carries sequence number 0; the /state/seq marker that follows gives the baseline
+                bundles.add(OscEncoder.encodeSequencedMessage(address, args));
+                entries.put(StateSchema.keyOf(address, args), args);
+            }
+        };
+        for (Consumer<OscSink> provider : providers) {
+            provider.accept(sink);
+        }
+        return new Snapshot(bundles.finish(), Collections.unmodifiableMap(entries));
+    }
+
+    // Encoded bundles and the arguments they hold, by entity key
+    public record Snapshot(List<byte[]> bundles, Map<Object, Object[]> entries) {
+    }
+}
@@ -0,0 +1,201 @@
+package com.github.unthingable.harness;
+
+import java.util.Map;
+
+// Shape of the /state/* messages: how many leading arguments identify the entity, and the names of the rest
+public final class StateSchema {
+
+    private static final Map<String, Shape> SHAPES = Map.ofEntries(
+            Map.entry("/state/project", new Shape(0, "name")),
+            Map.entry("/state/transport", new Shape(0, "state")),
+            Map.entry("/state/cursor_track", new Shape(0, "index", "name")),
+            Map.entry("/state/device", new Shape(0, "name", "index")),
+            Map.entry("/state/track", new Shape(1, "name", "position", "type", "mute", "solo", "arm", "volume")
+                    .continuous("volume")),
+            Map.entry("/state/track_bank", new Shape(0, "scroll_position")),
+            Map.entry("/state/remote_control/page", new Shape(0, "name", "index", "count")),
+            Map.entry("/state/remote_control/param", new Shape(1, "name", "value").continuous("value")),
+            Map.entry("/state/clip", new Shape(2, "has_content", "is_playing", "is_recording")),
+            Map.entry("/state/clip_matrix", new Shape(1, "scenes", "has_content", "is_playing", "is_recording")));
+
+    private StateSchema() {
+    }
+
+    public static boolean isState(String address) {
+        return address.startsWith("/state/");
+    }
+
+    public static int keyArity(String address) {
+        Shape shape = shapeOf(address);
+        return shape != null ? shape.keyArity : 0;
+    }
+
+    // Number of non-key arguments, or 0 for addresses that aren't state entities
+    public static int fieldCount(String address) {
+        Shape shape = SHAPES.get(address);
+        return shape != null ? shape.fields.length : 0;
+    }
+
+    // Name of the field at an argument index, or null for key arguments
+    public static String fieldName(String address, int argIndex) {
+        Shape shape = SHAPES.get(address);
+        return shape != null && argIndex >= shape.keyArity ? shape.fields[argIndex - shape.keyArity] : null;
+    }
+
+    // Shape of an entity address, or of the entity a single-field delta address such as /state/track/mute belongs to
+    private static Shape shapeOf(String address) {
+        Shape shape = SHAPES.get(address);
+        if (shape == null) {
+            int slash = address.lastIndexOf('/');
+            Shape parent = slash > 0 ? SHAPES.get(address.substring(0, slash)) : null;
+            if (parent != null && parent.indexOf(address.substring(slash + 1)) >= 0) {
+                return parent;
+            }
+        }
+        return shape;
+    }
+
+    // Argument index of the field that changes continuously (subject to throttling), or -1
+    public static int continuousField(String address) {
+        Shape shape = SHAPES.get(address);
+        return shape != null && shape.continuous >= 0 ? shape.keyArity + shape.continuous : -1;
+    }
+
+    // Entity key for latest-value-wins conflation, or null for events that must all be delivered
+    public static Object keyOf(String address, Object... args) {
+        if (!isState(address)) {
+            return null;
+        }
+        return switch (keyArity(address)) {
+            case 1 -> new EntityKey(address, args[0], null);
+            case 2 -> new EntityKey(address, args[0], args[1]);
+            default -> address;
+        };
+    }
+
+    // Key of a single-field delta message, distinct per field but tied to its entity's key
+    public static Object fieldKeyOf(Object entityKey, int argIndex) {
+        return new FieldKey(entityKey, argIndex);
+    }
+
+    // The entity a key belongs to: itself for full messages, the entity for field deltas
+    public static Object entityOf(Object key) {
+        return key instanceof FieldKey field ? field.entity() : key;
+    }
+
+    // Whether a message belongs to a pattern of path segments, matched against its address followed by its key
+    // arguments: /state/track/3 is track 3, /state/clip/*/2 scene 2 of every track. A pattern also matches
+    // everything below it, so /state/remote_control covers both its page and its params.
+    public static boolean matches(String pattern, String address, Object[] args) {
+        String[] segments = segments(pattern);
+        String[] addressSegments = segments(address);
+        int arity = keyArity(address);
+        if (segments.length > addressSegments.length + arity) {
+            return false;
+        }
+        for (int i = 0; i < segments.length; i++) {
+            String actual = i < addressSegments.length
+                    ? addressSegments[i]
+                    : String.valueOf(args[i - addressSegments.length]);
+            if (!segments[i].equals("*") && !segments[i].equals(actual)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Whether messages with this address prefix could match the pattern
+    public static boolean mayMatch(String pattern, String prefix) {
+        String[] segments = segments(pattern);
+        String[] prefixSegments = segments(prefix);
+        for (int i = 0; i < Math.min(segments.length, prefixSegments.length); i++) {
+            if (!segments[i].equals("*") && !segments[i].equals(prefixSegments[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String[] segments(String path) {
+        return path.length() <= 1 ? new String[0] : path.substring(1).split("/");
+    }
+
+    // Resolves /state/<entity>[/<key>...][/<field>], e.g. /state/clip/2/3/is_playing or /state/transport.
+    // The field may be omitted for entities with a single field. Returns null if the path names no field.
+    public static Path parsePath(String path) {
+        for (Map.Entry<String, Shape> entry : SHAPES.entrySet()) {
+            String address = entry.getKey();
+            Shape shape = entry.getValue();
+            if (!path.startsWith(address)
+                    || (path.length() > address.length() && path.charAt(address.length()) != '/')) {
+                continue;
+            }
+            String rest = path.substring(address.length());
+            String[] segments = rest.isEmpty() ? new String[0] : rest.substring(1).split("/");
+            if (segments.length < shape.keyArity || segments.length > shape.keyArity + 1) {
+                continue;
+            }
+            Object[] keyArgs = new Object[shape.keyArity];
+            try {
+                for (int i = 0; i < shape.keyArity; i++) {
+                    keyArgs[i] = Integer.valueOf(segments[i]);
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            int field;
+            if (segments.length == shape.keyArity) {
+                if (shape.fields.length != 1) {
+                    return null;
+                }
+                field = 0;
+            } else {
+                field = shape.indexOf(segments[shape.keyArity]);
+                if (field < 0) {
+                    return null;
+                }
+            }
+            return new Path(address, keyOf(address, keyArgs), shape.keyArity + field);
+        }
+        return null;
+    }
+
+    // A single field of one entity: the message address, its entity key and the argument index of the field
+    public record Path(String address, Object key, int argIndex) {
+    }
+
+    private record EntityKey(String address, Object first, Object second) {
+    }
+
+    private record FieldKey(Object entity, int argIndex) {
+    }
+
+    private static final class Shape {
+        private final int keyArity;
+        private final String[] fields;
+        private final int continuous;
+
+        private Shape(int keyArity, String... fields) {
+            this(keyArity, -1, fields);
+        }
+
+        private Shape(int keyArity, int continuous, String[] fields) {
+            this.keyArity = keyArity;
+            this.continuous = continuous;
+            this.fields = fields;
+        }
+
+        private Shape continuous(String field) {
+            return new Shape(keyArity, indexOf(field), fields);
+        }
+
+        private int indexOf(String field) {
+            for (int i = 0; i < fields.length; i++) {
+                if (fields[i].equals(field)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
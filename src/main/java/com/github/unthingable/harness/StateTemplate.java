@@ -0,0 +1,113 @@
+package com.github.unthingable.harness;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// A state message of fixed shape, broadcast for the same entities on every flush. The address and type tags
+// are encoded once, entity keys are made once per entity, and string arguments are only re-encoded when they
+// change. Unlike OscTemplate, each broadcast still takes its own argument array and bytes: client shadows,
+// throttles and the replay ring keep both after the message is sent.
+public final class StateTemplate {
+
+    private final String address;
+    private final String typeTags;
+    private final boolean keyed;
+    // Address and type tags, including the trailing sequence number's
+    private final byte[] prefix;
+    // By entity index; entities without key arguments have the address as their only key
+    private final Object[] keys;
+    // Last string encoded per entity and argument, and its padded bytes
+    private final String[][] strings;
+    private final byte[][][] stringBytes;
+
+    // Type tags without the leading comma, keys included: i, f, h, d and s. Entities are keyed by one int
+    // argument from 0 to entities - 1, or by nothing if the address has no key arguments.
+    public StateTemplate(String address, String typeTags, int entities) {
+        int keyArity = StateSchema.keyArity(address);
+        if (!StateSchema.isState(address) || keyArity > 1
+                || typeTags.length() != keyArity + StateSchema.fieldCount(address)) {
+            throw new IllegalArgumentException(address + " with ," + typeTags + " is not a known state shape");
+        }
+        if (keyArity == 1 && typeTags.charAt(0) != 'i') {
+            throw new IllegalArgumentException(address + " needs an int key for a template");
+        }
+        for (int i = 0; i < typeTags.length(); i++) {
+            if ("ifhds".indexOf(typeTags.charAt(i)) < 0) {
+                throw new IllegalArgumentException("Type tag " + typeTags.charAt(i) + " not supported in templates");
+            }
+        }
+        this.address = address;
+        this.typeTags = typeTags;
+        this.keyed = keyArity == 1;
+        byte[] addressBytes = address.getBytes(StandardCharsets.US_ASCII);
+        String tags = "," + typeTags + "i";
+        ByteBuffer buf = ByteBuffer.allocate(padded(addressBytes.length + 1) + padded(tags.length() + 1));
+        buf.put(addressBytes).position(padded(addressBytes.length + 1));
+        buf.put(tags.getBytes(StandardCharsets.US_ASCII));
+        this.prefix = buf.array();
+        int count = keyed ? entities : 1;
+        this.keys = new Object[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = keyed ? StateSchema.keyOf(address, i) : address;
+        }
+        this.strings = new String[count][typeTags.length()];
+        this.stringBytes = new byte[count][typeTags.length()][];
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    Object keyOf(Object[] args) {
+        return keys[entity(args)];
+    }
+
+    // Same bytes as OscEncoder.encodeSequencedMessage(address, args)
+    byte[] encode(Object[] args) {
+        if (args.length != typeTags.length()) {
+            throw new IllegalArgumentException(address + " takes " + typeTags.length() + " arguments, not "
+                    + args.length);
+        }
+        int entity = entity(args);
+        int size = prefix.length + OscEncoder.SEQUENCE_SIZE;
+        for (int i = 0; i < args.length; i++) {
+            size += switch (typeTags.charAt(i)) {
+                case 'h', 'd' -> 8;
+                case 's' -> stringBytes(entity, i, (String) args[i]).length;
+                default -> 4;
+            };
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.put(prefix);
+        for (int i = 0; i < args.length; i++) {
+            switch (typeTags.charAt(i)) {
+                case 'i' -> buf.putInt((Integer) args[i]);
+                case 'f' -> buf.putFloat((Float) args[i]);
+                case 'h' -> buf.putLong((Long) args[i]);
+                case 'd' -> buf.putDouble((Double) args[i]);
+                default -> buf.put(stringBytes[entity][i]);
+            }
+        }
+        // The sequence number stays 0 until sent
+        return buf.array();
+    }
+
+    private int entity(Object[] args) {
+        return keyed ? (Integer) args[0] : 0;
+    }
+
+    private byte[] stringBytes(int entity, int index, String value) {
+        if (!value.equals(strings[entity][index])) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            byte[] encoded = new byte[padded(bytes.length + 1)];
+            System.arraycopy(bytes, 0, encoded, 0, bytes.length);
+            strings[entity][index] = value;
+            stringBytes[entity][index] = encoded;
+        }
+        return stringBytes[entity][index];
+    }
+
+    private static int padded(int length) {
+        return (length + 3) & ~3;
+    }
+}
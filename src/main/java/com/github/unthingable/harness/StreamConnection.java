@@ -0,0 +1,233 @@
+package com.github.unthingable.harness;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+// Client connection over TCP or a Unix domain socket, each OSC packet framed by SLIP as in OSC 1.1
+// (RFC 1055, with an END byte before and after the packet). Frames go into a ring buffer that the
+// sender thread writes out with gathering writes; whatever the socket doesn't take is finished by
+// the stream transport's selector thread. Nothing is dropped: while the buffer is full, packets wait
+// in the client queue, where state still conflates.
+public class StreamConnection extends ClientConnection {
+
+    private static final byte END = (byte) 0xC0;
+    private static final byte ESC = (byte) 0xDB;
+    private static final byte ESC_END = (byte) 0xDC;
+    private static final byte ESC_ESC = (byte) 0xDD;
+
+    public static final int BUFFER_SIZE = 1 << 20;
+    // The sender stops taking packets from the client queue above this many unwritten bytes,
+    // leaving room for at least one more frame of the largest UDP-sized packet
+    private static final int HIGH_WATER = 1 << 18;
+
+    private final StreamTransport transport;
+    private final SocketAddress target;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    // The unwritten part of the ring, which wraps around the end of the buffer at most once
+    private final ByteBuffer[] pending = {buffer.duplicate(), buffer.duplicate()};
+    private SocketChannel channel;
+    private SelectionKey key;
+    private boolean connected = false;
+    private long appended = 0;
+    private long written = 0;
+    private boolean blocked = false;
+    private volatile boolean closed = false;
+    private Runnable writableListener;
+
+    public StreamConnection(StreamTransport transport, SocketAddress target, int port) {
+        super(null, target, port);
+        this.transport = transport;
+        this.target = target;
+    }
+
+    @Override
+    public boolean detectsClose() {
+        return true;
+    }
+
+    // Starts a non-blocking connect; refusals noticed at once are thrown, anything later closes the connection.
+    // Packets sent before the selector thread finishes connecting wait in the buffer.
+    @Override
+    public void open() throws IOException {
+        SocketChannel opened = target instanceof UnixDomainSocketAddress
+                ? SocketChannel.open(StandardProtocolFamily.UNIX)
+                : SocketChannel.open();
+        try {
+            opened.configureBlocking(false);
+            opened.connect(target);
+        } catch (IOException e) {
+            opened.close();
+            throw e;
+        }
+        synchronized (this) {
+            channel = opened;
+        }
+        transport.register(this);
+    }
+
+    synchronized SocketChannel getChannel() {
+        return channel;
+    }
+
+    // From the selector thread, once the channel is registered
+    void registered(SelectionKey key) {
+        synchronized (this) {
+            this.key = key;
+        }
+        onConnectable();
+    }
+
+    // From the selector thread when a pending connect can be finished
+    void onConnectable() {
+        synchronized (this) {
+            if (closed || connected) {
+                return;
+            }
+            try {
+                if (!channel.finishConnect()) {
+                    return;
+                }
+            } catch (IOException e) {
+                // Unregistered on the next idle check
+                close();
+                return;
+            }
+            connected = true;
+        }
+        onWritable();
+    }
+
+    @Override
+    public void close() {
+        SocketChannel toClose;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (key != null) {
+                key.cancel();
+            }
+            toClose = channel;
+        }
+        if (toClose != null) {
+            try {
+                toClose.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    // A closed connection stays writable, so its queue drains into failed sends instead of stalling
+    @Override
+    public synchronized boolean isWritable() {
+        if (closed || appended - written < HIGH_WATER) {
+            return true;
+        }
+        blocked = true;
+        return false;
+    }
+
+    @Override
+    public synchronized void setWritableListener(Runnable listener) {
+        writableListener = listener;
+    }
+
+    @Override
+    public void send(ByteBuffer packet) throws IOException {
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Connection to " + target + " is closed");
+            }
+            int length = packet.remaining();
+            int frame = length + 2;
+            for (int i = packet.position(); i < packet.limit(); i++) {
+                byte b = packet.get(i);
+                if (b == END || b == ESC) {
+                    frame++;
+                }
+            }
+            if (frame > BUFFER_SIZE - (appended - written)) {
+                throw new IOException("Packet of " + length + " bytes does not fit the write buffer");
+            }
+            put(END);
+            for (int i = packet.position(); i < packet.limit(); i++) {
+                byte b = packet.get(i);
+                if (b == END) {
+                    put(ESC);
+                    put(ESC_END);
+                } else if (b == ESC) {
+                    put(ESC);
+                    put(ESC_ESC);
+                } else {
+                    put(b);
+                }
+            }
+            put(END);
+            if (connected) {
+                writePending();
+            }
+        }
+    }
+
+    private void put(byte b) {
+        buffer.put((int) (appended++ % BUFFER_SIZE), b);
+    }
+
+    // From the selector thread when the socket can take more
+    void onWritable() {
+        Runnable listener = null;
+        synchronized (this) {
+            if (closed || !connected) {
+                return;
+            }
+            try {
+                writePending();
+            } catch (IOException e) {
+                // Counted as failed sends from now on, and unregistered on the next idle check
+                close();
+                return;
+            }
+            if (blocked && appended - written < HIGH_WATER) {
+                blocked = false;
+                listener = writableListener;
+            }
+        }
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    // Writes as much as the socket takes, and asks the selector to wait for room if that's not all of it
+    private void writePending() throws IOException {
+        int remaining = (int) (appended - written);
+        if (remaining > 0) {
+            int start = (int) (written % BUFFER_SIZE);
+            int first = Math.min(remaining, BUFFER_SIZE - start);
+            pending[0].limit(start + first).position(start);
+            pending[1].limit(remaining - first).position(0);
+            try {
+                written += channel.write(pending, 0, first < remaining ? 2 : 1);
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+        int ops = written < appended ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+        if (key.interestOps() != ops) {
+            key.interestOps(ops);
+            transport.wakeup();
+        }
+    }
+}
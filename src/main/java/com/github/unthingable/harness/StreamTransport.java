@@ -0,0 +1,123 @@
+package com.github.unthingable.harness;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+// Selector thread for stream connections: finishes connects and the writes the sender thread couldn't
+// complete, and notices when a driver closes its end. Anything a driver sends on the stream is read and
+// ignored; commands still go to the OSC port.
+public class StreamTransport {
+
+    private final Selector selector;
+    private final Thread thread;
+    private final ArrayDeque<StreamConnection> registrations = new ArrayDeque<>();
+    private final ByteBuffer discard = ByteBuffer.allocate(4096);
+    private volatile boolean running = true;
+
+    public StreamTransport() throws IOException {
+        selector = Selector.open();
+        thread = new Thread(this::run, "harness-streams");
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (SelectionKey key : selector.keys()) {
+            ((StreamConnection) key.attachment()).close();
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            // Closing anyway
+        }
+    }
+
+    // Channels are registered on the selector thread, which would otherwise block registration in select()
+    void register(StreamConnection connection) {
+        synchronized (registrations) {
+            registrations.add(connection);
+        }
+        selector.wakeup();
+    }
+
+    void wakeup() {
+        selector.wakeup();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                selector.select();
+                registerPending();
+                for (Iterator<SelectionKey> it = selector.selectedKeys().iterator(); it.hasNext(); ) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    StreamConnection connection = (StreamConnection) key.attachment();
+                    if (key.isValid() && key.isConnectable()) {
+                        connection.onConnectable();
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        read(connection);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        connection.onWritable();
+                    }
+                }
+            } catch (ClosedSelectorException e) {
+                return;
+            } catch (IOException e) {
+                // Selector failure; keep serving the other connections
+            }
+        }
+    }
+
+    private void registerPending() {
+        while (true) {
+            StreamConnection connection;
+            synchronized (registrations) {
+                connection = registrations.poll();
+            }
+            if (connection == null) {
+                return;
+            }
+            SocketChannel channel = connection.getChannel();
+            int ops = channel.isConnectionPending() ? SelectionKey.OP_CONNECT : SelectionKey.OP_READ;
+            try {
+                connection.registered(channel.register(selector, ops, connection));
+            } catch (IOException e) {
+                connection.close();
+            }
+        }
+    }
+
+    private void read(StreamConnection connection) {
+        try {
+            int n;
+            do {
+                discard.clear();
+                n = connection.getChannel().read(discard);
+            } while (n > 0);
+            if (n < 0) {
+                connection.close();
+            }
+        } catch (IOException e) {
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.github.unthingable.harness;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+// Address-prefix subscriptions, matched on whole path segments (/state/clip does not cover /state/clip_matrix).
+// Each client owns one bit; routing an address yields the mask of interested clients and is cached per address.
+public class SubscriptionTrie {
+
+    public static final int MAX_CLIENTS = Long.SIZE;
+
+    private final Node root = new Node();
+    private final Map<String, Long> routes = new HashMap<>();
+
+    public void subscribe(String prefix, int client) {
+        node(prefix, true).mask |= 1L << client;
+        routes.clear();
+    }
+
+    public void unsubscribe(String prefix, int client) {
+        Node node = node(prefix, false);
+        if (node != null) {
+            node.mask &= ~(1L << client);
+            routes.clear();
+        }
+    }
+
+    public void removeClient(int client) {
+        root.clear(~(1L << client));
+        routes.clear();
+    }
+
+    public long route(String address) {
+        Long mask = routes.get(address);
+        if (mask == null) {
+            mask = match(address);
+            routes.put(address, mask);
+        }
+        return mask;
+    }
+
+    // Clients subscribed to the prefix, to any ancestor of it, or to anything below it
+    public long overlapping(String prefix) {
+        long mask = route(prefix);
+        Node node = node(prefix, false);
+        return node != null ? mask | node.subtreeMask() : mask;
+    }
+
+    // Normalized prefix, or null if it is not an OSC address
+    public static String normalize(String prefix) {
+        if (prefix == null || !prefix.startsWith("/")) {
+            return null;
+        }
+        return prefix.length() > 1 && prefix.endsWith("/") ? prefix.substring(0, prefix.length() - 1) : prefix;
+    }
+
+    public static boolean covers(Set<String> prefixes, String address) {
+        if (prefixes.contains("/") || prefixes.contains(address)) {
+            return true;
+        }
+        for (int i = address.indexOf('/', 1); i > 0; i = address.indexOf('/', i + 1)) {
+            if (prefixes.contains(address.substring(0, i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long match(String address) {
+        long mask = root.mask;
+        Node node = root;
+        for (String segment : segments(address)) {
+            node = node.children.get(segment);
+            if (node == null) {
+                break;
+            }
+            mask |= node.mask;
+        }
+        return mask;
+    }
+
+    private Node node(String prefix, boolean create) {
+        Node node = root;
+        for (String segment : segments(prefix)) {
+            Node child = node.children.get(segment);
+            if (child == null) {
+                if (!create) {
+                    return null;
+                }
+                child = new Node();
+                node.children.put(segment, child);
+            }
+            node = child;
+        }
+        return node;
+    }
+
+    private static String[] segments(String path) {
+        return path.length() <= 1 ? new String[0] : path.substring(1).split("/");
+    }
+
+    private static final class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private long mask;
+
+        private long subtreeMask() {
+            long result = mask;
+            for (Node child : children.values()) {
+                result |= child.subtreeMask();
+            }
+            return result;
+        }
+
+        private void clear(long keep) {
+            mask &= keep;
+            for (Node child : children.values()) {
+                child.clear(keep);
+            }
+        }
+    }
+}
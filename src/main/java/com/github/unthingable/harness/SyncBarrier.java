@@ -0,0 +1,57 @@
+package com.github.unthingable.harness;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+// /sync tokens, answered from flush once the effects of earlier commands have been sent.
+// Command effects reach the observers asynchronously, so a token waits for a flush after at least one
+// host round trip that produced no state output, or gives up waiting after MAX_FLUSHES.
+public class SyncBarrier {
+
+    private static final int MIN_FLUSHES = 2;
+    private static final int MAX_FLUSHES = 16;
+
+    private final ClientManager clientManager;
+    private final Runnable flushRequester;
+    private final List<Pending> pending = new ArrayList<>();
+
+    public SyncBarrier(ClientManager clientManager, Runnable flushRequester) {
+        this.clientManager = clientManager;
+        this.flushRequester = flushRequester;
+    }
+
+    public void add(int port, int token) {
+        pending.add(new Pending(port, token));
+        flushRequester.run();
+    }
+
+    public void onFlush(boolean producedOutput) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        for (Iterator<Pending> it = pending.iterator(); it.hasNext(); ) {
+            Pending sync = it.next();
+            sync.flushes++;
+            if ((sync.flushes >= MIN_FLUSHES && !producedOutput) || sync.flushes >= MAX_FLUSHES) {
+                it.remove();
+                // Queued behind all state sent so far, so the driver sees it last
+                clientManager.reply(sync.port, "/sync/ok", sync.token);
+            }
+        }
+        if (!pending.isEmpty()) {
+            flushRequester.run();
+        }
+    }
+
+    private static final class Pending {
+        private final int port;
+        private final int token;
+        private int flushes = 0;
+
+        private Pending(int port, int token) {
+            this.port = port;
+            this.token = token;
+        }
+    }
+}
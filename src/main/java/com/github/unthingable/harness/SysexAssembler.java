@@ -0,0 +1,83 @@
+package com.github.unthingable.harness;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Reassembles chunked sysex from /midi/sysex/blob/send. Chunks of one message must arrive in order;
+// buffers of completed or abandoned messages are reused for the next ones.
+public class SysexAssembler {
+
+    public static final int MAX_SIZE = 1 << 20;
+    private static final int MAX_PENDING = 16;
+
+    private final Map<Integer, Assembly> pending = new LinkedHashMap<>();
+    private final ArrayDeque<Assembly> free = new ArrayDeque<>();
+
+    // Complete message once its last chunk is added, otherwise null
+    public byte[] add(int id, int index, int count, byte[] data) {
+        if (count < 1 || index < 0 || index >= count) {
+            throw new IllegalArgumentException("Bad sysex chunk " + index + "/" + count + " of message " + id);
+        }
+        if (count == 1) {
+            return data;
+        }
+        Assembly assembly;
+        if (index == 0) {
+            recycle(pending.remove(id));
+            if (pending.size() >= MAX_PENDING) {
+                // Abandoned transfers give way to new ones
+                Iterator<Assembly> oldest = pending.values().iterator();
+                recycle(oldest.next());
+                oldest.remove();
+            }
+            assembly = free.isEmpty() ? new Assembly() : free.poll();
+            assembly.count = count;
+            pending.put(id, assembly);
+        } else {
+            assembly = pending.get(id);
+            if (assembly == null || assembly.next != index || assembly.count != count) {
+                recycle(pending.remove(id));
+                throw new IllegalArgumentException("Sysex chunk " + index + "/" + count + " of message " + id
+                        + " out of order, message dropped");
+            }
+        }
+        if (assembly.length + data.length > MAX_SIZE) {
+            recycle(pending.remove(id));
+            throw new IllegalArgumentException("Sysex message " + id + " exceeds " + MAX_SIZE + " bytes, message dropped");
+        }
+        assembly.append(data);
+        if (++assembly.next < count) {
+            return null;
+        }
+        pending.remove(id);
+        byte[] message = Arrays.copyOf(assembly.buffer, assembly.length);
+        recycle(assembly);
+        return message;
+    }
+
+    private void recycle(Assembly assembly) {
+        if (assembly != null) {
+            assembly.length = 0;
+            assembly.next = 0;
+            free.push(assembly);
+        }
+    }
+
+    private static final class Assembly {
+        private byte[] buffer = new byte[4096];
+        private int length = 0;
+        private int count = 0;
+        private int next = 0;
+
+        private void append(byte[] data) {
+            if (length + data.length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + data.length));
+            }
+            System.arraycopy(data, 0, buffer, length, data.length);
+            length += data.length;
+        }
+    }
+}
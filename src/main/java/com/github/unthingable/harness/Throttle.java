@@ -0,0 +1,16 @@
+package com.github.unthingable.harness;
+
+// Deadband and rate limit for the continuous field of a state message (see StateSchema.continuousField)
+public record Throttle(double deadband, long minIntervalNanos) {
+
+    public static final Throttle NONE = new Throttle(0, 0);
+
+    // A rate of 0 means unlimited
+    public static Throttle of(double deadband, double maxRateHz) {
+        return new Throttle(Math.max(0, deadband), maxRateHz > 0 ? (long) (1e9 / maxRateHz) : 0);
+    }
+
+    public boolean isNone() {
+        return deadband <= 0 && minIntervalNanos <= 0;
+    }
+}
@@ -0,0 +1,28 @@
+package com.github.unthingable.harness.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+@Name("com.github.unthingable.harness.Broadcast")
+@Label("Harness Broadcast")
+@Description("Encoding and queueing of one broadcast for its subscribed clients, or of one reply")
+@Threshold("1 ms")
+@StackTrace(false)
+@Category({"Bitwig Harness"})
+public class BroadcastEvent extends jdk.jfr.Event {
+
+    @Label("Address")
+    public String address;
+
+    @Label("Clients")
+    public int clients;
+
+    @Label("Bytes Queued")
+    @DataAmount
+    public long bytes;
+}
@@ -0,0 +1,18 @@
+package com.github.unthingable.harness.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.github.unthingable.harness.Command")
+@Label("Harness Command")
+@Description("Dispatch of one OSC command, including commands inside /batch")
+@StackTrace(false)
+@Category({"Bitwig Harness"})
+public class CommandEvent extends jdk.jfr.Event {
+
+    @Label("Address")
+    public String address;
+}
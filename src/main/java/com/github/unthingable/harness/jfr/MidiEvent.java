@@ -0,0 +1,27 @@
+package com.github.unthingable.harness.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+@Name("com.github.unthingable.harness.Midi")
+@Label("Harness MIDI Forward")
+@Description("MIDI forwarded between the virtual port and the clients")
+@Threshold("1 ms")
+@StackTrace(false)
+@Category({"Bitwig Harness"})
+public class MidiEvent extends jdk.jfr.Event {
+
+    @Label("Direction")
+    @Description("in: from the extension under test to the clients; out: from a client to the extension")
+    public String direction;
+
+    @Label("Status")
+    public int status;
+
+    @Label("Size")
+    public int bytes;
+}
@@ -0,0 +1,21 @@
+package com.github.unthingable.harness.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.github.unthingable.harness.ObserverFlush")
+@Label("Harness Observer Flush")
+@Description("One observer group sending the state its host callbacks marked dirty")
+@StackTrace(false)
+@Category({"Bitwig Harness"})
+public class ObserverFlushEvent extends jdk.jfr.Event {
+
+    @Label("Observer")
+    public String observer;
+
+    @Label("Messages")
+    public long messages;
+}
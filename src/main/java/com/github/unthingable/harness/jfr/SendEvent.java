@@ -0,0 +1,31 @@
+package com.github.unthingable.harness.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+@Name("com.github.unthingable.harness.Send")
+@Label("Harness Send")
+@Description("One datagram sent to a client by the sender thread")
+@Threshold("1 ms")
+@StackTrace(false)
+@Category({"Bitwig Harness"})
+public class SendEvent extends jdk.jfr.Event {
+
+    @Label("Client Port")
+    public int port;
+
+    @Label("Size")
+    @DataAmount
+    public int bytes;
+
+    @Label("Sequence")
+    public int sequence;
+
+    @Label("Failed")
+    public boolean failed;
+}
@@ -1,72 +1,179 @@
 package com.github.unthingable.harness.observers;
 
-import com.bitwig.extension.api.opensoundcontrol.OscConnection;
+import com.bitwig.extension.controller.api.ClipLauncherSlot;
 import com.bitwig.extension.controller.api.ClipLauncherSlotBank;
 import com.bitwig.extension.controller.api.TrackBank;
 import com.github.unthingable.harness.ClientManager;
+import com.github.unthingable.harness.OscSink;
 
-public class ClipMatrixObserver {
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Slot flags are packed into one long bitset per track and flag (bit s % 64 of word s / 64 is scene s).
+// Published per slot as /state/clip and per track as /state/clip_matrix; clients subscribe to either, and
+// flushes only build the representations someone receives.
+public class ClipMatrixObserver extends StateObserver {
+
+    private static final String[] ADDRESSES = {"/state/clip", "/state/clip_matrix"};
 
     private final ClientManager clientManager;
     private final int numTracks;
     private final int numScenes;
-    private final boolean[][] hasContent;
-    private final boolean[][] isPlaying;
-    private final boolean[][] isRecording;
+    private final int words;
+    private final long[][] hasContent;
+    private final long[][] isPlaying;
+    private final long[][] isRecording;
+    private final long[][] dirtySlots;
+    private final boolean[] dirtyTracks;
+    private boolean anyDirty = false;
 
     public ClipMatrixObserver(TrackBank trackBank, ClientManager clientManager, int numTracks, int numScenes) {
         this.clientManager = clientManager;
         this.numTracks = numTracks;
         this.numScenes = numScenes;
-        this.hasContent = new boolean[numTracks][numScenes];
-        this.isPlaying = new boolean[numTracks][numScenes];
-        this.isRecording = new boolean[numTracks][numScenes];
+        this.words = (numScenes + Long.SIZE - 1) / Long.SIZE;
+        this.hasContent = new long[numTracks][words];
+        this.isPlaying = new long[numTracks][words];
+        this.isRecording = new long[numTracks][words];
+        this.dirtySlots = new long[numTracks][words];
+        this.dirtyTracks = new boolean[numTracks];
 
+        // Per-slot values rather than the bank-wide observers, so each one can be unsubscribed while idle
         for (int t = 0; t < numTracks; t++) {
             final int trackIdx = t;
             ClipLauncherSlotBank slotBank = trackBank.getItemAt(t).clipLauncherSlotBank();
 
-            slotBank.addHasContentObserver((slotIdx, value) -> {
-                if (slotIdx < numScenes) {
-                    hasContent[trackIdx][slotIdx] = value;
-                    broadcastClip(trackIdx, slotIdx);
-                }
-            });
+            for (int s = 0; s < numScenes; s++) {
+                final int slotIdx = s;
+                ClipLauncherSlot slot = slotBank.getItemAt(s);
 
-            slotBank.addIsPlayingObserver((slotIdx, value) -> {
-                if (slotIdx < numScenes) {
-                    isPlaying[trackIdx][slotIdx] = value;
-                    broadcastClip(trackIdx, slotIdx);
-                }
-            });
+                observe(slot.hasContent()).addValueObserver(value -> {
+                    set(hasContent[trackIdx], slotIdx, value);
+                    markDirty(trackIdx, slotIdx);
+                });
+
+                observe(slot.isPlaying()).addValueObserver(value -> {
+                    set(isPlaying[trackIdx], slotIdx, value);
+                    markDirty(trackIdx, slotIdx);
+                });
 
-            slotBank.addIsRecordingObserver((slotIdx, value) -> {
-                if (slotIdx < numScenes) {
-                    isRecording[trackIdx][slotIdx] = value;
-                    broadcastClip(trackIdx, slotIdx);
+                observe(slot.isRecording()).addValueObserver(value -> {
+                    set(isRecording[trackIdx], slotIdx, value);
+                    markDirty(trackIdx, slotIdx);
+                });
+            }
+        }
+    }
+
+    private void markDirty(int trackIdx, int sceneIdx) {
+        set(dirtySlots[trackIdx], sceneIdx, true);
+        dirtyTracks[trackIdx] = true;
+        anyDirty = true;
+        received();
+    }
+
+    @Override
+    public String[] getAddresses() {
+        return ADDRESSES;
+    }
+
+    @Override
+    protected void markAllDirty() {
+        for (int t = 0; t < numTracks; t++) {
+            for (int s = 0; s < numScenes; s++) {
+                set(dirtySlots[t], s, true);
+            }
+        }
+        Arrays.fill(dirtyTracks, true);
+        anyDirty = true;
+    }
+
+    @Override
+    public void flush() {
+        if (!anyDirty) {
+            return;
+        }
+        anyDirty = false;
+        boolean clips = clientManager.isWanted("/state/clip");
+        boolean matrix = clientManager.isWanted("/state/clip_matrix");
+        for (int t = 0; t < numTracks; t++) {
+            if (!dirtyTracks[t]) {
+                continue;
+            }
+            dirtyTracks[t] = false;
+            long[] dirty = dirtySlots[t];
+            if (clips) {
+                for (int w = 0; w < words; w++) {
+                    while (dirty[w] != 0) {
+                        int s = w * Long.SIZE + Long.numberOfTrailingZeros(dirty[w]);
+                        dirty[w] &= dirty[w] - 1;
+                        broadcastClip(t, s);
+                    }
                 }
-            });
+            } else {
+                Arrays.fill(dirty, 0);
+            }
+            if (matrix) {
+                clientManager.broadcast("/state/clip_matrix", matrixArgs(t));
+            }
         }
     }
 
     private void broadcastClip(int trackIdx, int sceneIdx) {
-        clientManager.broadcast("/state/clip",
-                trackIdx, sceneIdx,
-                hasContent[trackIdx][sceneIdx] ? 1 : 0,
-                isPlaying[trackIdx][sceneIdx] ? 1 : 0,
-                isRecording[trackIdx][sceneIdx] ? 1 : 0);
+        clientManager.broadcast("/state/clip", clipArgs(trackIdx, sceneIdx));
+    }
+
+    private Object[] clipArgs(int t, int s) {
+        return new Object[]{t, s,
+                get(hasContent[t], s) ? 1 : 0,
+                get(isPlaying[t], s) ? 1 : 0,
+                get(isRecording[t], s) ? 1 : 0};
     }
 
-    public void sendSnapshot(OscConnection conn) {
+    private Object[] matrixArgs(int t) {
+        return new Object[]{t, numScenes, toBlob(hasContent[t]), toBlob(isPlaying[t]), toBlob(isRecording[t])};
+    }
+
+    @Override
+    public void query(OscSink sink) {
         for (int t = 0; t < numTracks; t++) {
             for (int s = 0; s < numScenes; s++) {
-                if (hasContent[t][s]) {
-                    clientManager.sendTo(conn, "/state/clip",
-                            t, s, 1,
-                            isPlaying[t][s] ? 1 : 0,
-                            isRecording[t][s] ? 1 : 0);
+                sink.send("/state/clip", clipArgs(t, s));
+            }
+            sink.send("/state/clip_matrix", matrixArgs(t));
+        }
+    }
+
+    @Override
+    public void sendSnapshot(OscSink sink) {
+        for (int t = 0; t < numTracks; t++) {
+            long[] content = hasContent[t];
+            for (int w = 0; w < words; w++) {
+                for (long bits = content[w]; bits != 0; bits &= bits - 1) {
+                    sink.send("/state/clip", clipArgs(t, w * Long.SIZE + Long.numberOfTrailingZeros(bits)));
                 }
             }
+            sink.send("/state/clip_matrix", matrixArgs(t));
+        }
+    }
+
+    private static boolean get(long[] bits, int index) {
+        return (bits[index / Long.SIZE] & (1L << index)) != 0;
+    }
+
+    private static void set(long[] bits, int index, boolean value) {
+        if (value) {
+            bits[index / Long.SIZE] |= 1L << index;
+        } else {
+            bits[index / Long.SIZE] &= ~(1L << index);
+        }
+    }
+
+    private static byte[] toBlob(long[] bits) {
+        ByteBuffer buf = ByteBuffer.allocate(bits.length * Long.BYTES);
+        for (long word : bits) {
+            buf.putLong(word);
         }
+        return buf.array();
     }
 }
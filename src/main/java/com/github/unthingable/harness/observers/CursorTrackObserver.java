@@ -1,33 +1,54 @@
 package com.github.unthingable.harness.observers;
 
-import com.bitwig.extension.api.opensoundcontrol.OscConnection;
 import com.bitwig.extension.controller.api.CursorTrack;
 import com.github.unthingable.harness.ClientManager;
+import com.github.unthingable.harness.OscSink;
 
-public class CursorTrackObserver {
+public class CursorTrackObserver extends StateObserver {
+
+    private static final String[] ADDRESSES = {"/state/cursor_track"};
 
     private final ClientManager clientManager;
     private int currentIndex = -1;
     private String currentName = "";
+    private boolean dirty = false;
 
     public CursorTrackObserver(CursorTrack cursorTrack, ClientManager clientManager) {
         this.clientManager = clientManager;
 
-        cursorTrack.name().addValueObserver(name -> {
+        observe(cursorTrack.name()).addValueObserver(name -> {
             currentName = name;
-            clientManager.broadcast("/state/cursor_track", currentIndex, currentName);
+            dirty = true;
+            received();
         });
 
-        cursorTrack.position().addValueObserver(position -> {
+        observe(cursorTrack.position()).addValueObserver(position -> {
             currentIndex = position;
-            clientManager.broadcast("/state/cursor_track", currentIndex, currentName);
+            dirty = true;
+            received();
         });
+    }
 
-        cursorTrack.name().markInterested();
-        cursorTrack.position().markInterested();
+    @Override
+    public String[] getAddresses() {
+        return ADDRESSES;
+    }
+
+    @Override
+    protected void markAllDirty() {
+        dirty = true;
+    }
+
+    @Override
+    public void flush() {
+        if (dirty) {
+            dirty = false;
+            clientManager.broadcast("/state/cursor_track", currentIndex, currentName);
+        }
     }
 
-    public void sendSnapshot(OscConnection conn) {
-        clientManager.sendTo(conn, "/state/cursor_track", currentIndex, currentName);
+    @Override
+    public void sendSnapshot(OscSink sink) {
+        sink.send("/state/cursor_track", currentIndex, currentName);
     }
 }
@@ -1,33 +1,54 @@
 package com.github.unthingable.harness.observers;
 
-import com.bitwig.extension.api.opensoundcontrol.OscConnection;
 import com.bitwig.extension.controller.api.CursorDevice;
 import com.github.unthingable.harness.ClientManager;
+import com.github.unthingable.harness.OscSink;
 
-public class DeviceObserver {
+public class DeviceObserver extends StateObserver {
+
+    private static final String[] ADDRESSES = {"/state/device"};
 
     private final ClientManager clientManager;
     private String currentName = "";
     private int currentIndex = -1;
+    private boolean dirty = false;
 
     public DeviceObserver(CursorDevice cursorDevice, ClientManager clientManager) {
         this.clientManager = clientManager;
 
-        cursorDevice.name().addValueObserver(name -> {
+        observe(cursorDevice.name()).addValueObserver(name -> {
             currentName = name;
-            clientManager.broadcast("/state/device", currentName, currentIndex);
+            dirty = true;
+            received();
         });
 
-        cursorDevice.position().addValueObserver(position -> {
+        observe(cursorDevice.position()).addValueObserver(position -> {
             currentIndex = position;
-            clientManager.broadcast("/state/device", currentName, currentIndex);
+            dirty = true;
+            received();
         });
+    }
 
-        cursorDevice.name().markInterested();
-        cursorDevice.position().markInterested();
+    @Override
+    public String[] getAddresses() {
+        return ADDRESSES;
+    }
+
+    @Override
+    protected void markAllDirty() {
+        dirty = true;
+    }
+
+    @Override
+    public void flush() {
+        if (dirty) {
+            dirty = false;
+            clientManager.broadcast("/state/device", currentName, currentIndex);
+        }
     }
 
-    public void sendSnapshot(OscConnection conn) {
-        clientManager.sendTo(conn, "/state/device", currentName, currentIndex);
+    @Override
+    public void sendSnapshot(OscSink sink) {
+        sink.send("/state/device", currentName, currentIndex);
     }
 }
@@ -1,25 +1,47 @@
 package com.github.unthingable.harness.observers;
 
-import com.bitwig.extension.api.opensoundcontrol.OscConnection;
 import com.bitwig.extension.controller.api.Application;
 import com.github.unthingable.harness.ClientManager;
+import com.github.unthingable.harness.OscSink;
 
-public class ProjectObserver {
+public class ProjectObserver extends StateObserver {
+
+    private static final String[] ADDRESSES = {"/state/project"};
 
     private final ClientManager clientManager;
     private String projectName = "";
+    private boolean dirty = false;
 
     public ProjectObserver(Application application, ClientManager clientManager) {
         this.clientManager = clientManager;
 
-        application.projectName().markInterested();
-        application.projectName().addValueObserver(name -> {
+        observe(application.projectName()).addValueObserver(name -> {
             projectName = name;
-            clientManager.broadcast("/state/project", projectName);
+            dirty = true;
+            received();
         });
     }
 
-    public void sendSnapshot(OscConnection conn) {
-        clientManager.sendTo(conn, "/state/project", projectName);
+    @Override
+    public String[] getAddresses() {
+        return ADDRESSES;
+    }
+
+    @Override
+    protected void markAllDirty() {
+        dirty = true;
+    }
+
+    @Override
+    public void flush() {
+        if (dirty) {
+            dirty = false;
+            clientManager.broadcast("/state/project", projectName);
+        }
+    }
+
+    @Override
+    public void sendSnapshot(OscSink sink) {
+        sink.send("/state/project", projectName);
     }
 }
@@ -1,13 +1,19 @@
 package com.github.unthingable.harness.observers;
 
-import com.bitwig.extension.api.opensoundcontrol.OscConnection;
 import com.bitwig.extension.controller.api.CursorRemoteControlsPage;
 import com.bitwig.extension.controller.api.RemoteControl;
 import com.github.unthingable.harness.ClientManager;
+import com.github.unthingable.harness.OscSink;
+import com.github.unthingable.harness.StateTemplate;
 
-public class RemoteControlsObserver {
+import java.util.Arrays;
+
+public class RemoteControlsObserver extends StateObserver {
+
+    private static final String[] ADDRESSES = {"/state/remote_control"};
 
     private final ClientManager clientManager;
+    private final StateTemplate paramTemplate;
     private final CursorRemoteControlsPage page;
     private final int paramCount;
 
@@ -16,54 +22,81 @@ public class RemoteControlsObserver {
     private int pageCount = 0;
     private final String[] paramNames;
     private final double[] paramValues;
+    private final boolean[] paramDirty;
+    private boolean pageDirty = false;
 
     public RemoteControlsObserver(CursorRemoteControlsPage page, ClientManager clientManager, int paramCount) {
         this.page = page;
         this.clientManager = clientManager;
+        this.paramTemplate = new StateTemplate("/state/remote_control/param", "isf", paramCount);
         this.paramCount = paramCount;
         this.paramNames = new String[paramCount];
         this.paramValues = new double[paramCount];
+        this.paramDirty = new boolean[paramCount];
 
         for (int i = 0; i < paramCount; i++) {
             paramNames[i] = "";
             paramValues[i] = 0.0;
         }
 
-        page.getName().addValueObserver(name -> {
+        observe(page.getName()).addValueObserver(name -> {
             pageName = name;
-            broadcastPage();
+            pageDirty = true;
+            received();
         });
 
-        page.selectedPageIndex().addValueObserver(index -> {
+        observe(page.selectedPageIndex()).addValueObserver(index -> {
             pageIndex = index;
-            broadcastPage();
+            pageDirty = true;
+            received();
         });
 
-        page.pageCount().addValueObserver(count -> {
+        observe(page.pageCount()).addValueObserver(count -> {
             pageCount = count;
-            broadcastPage();
+            pageDirty = true;
+            received();
         });
 
-        page.getName().markInterested();
-        page.selectedPageIndex().markInterested();
-        page.pageCount().markInterested();
-
         for (int i = 0; i < paramCount; i++) {
             final int idx = i;
             RemoteControl param = page.getParameter(i);
 
-            param.name().addValueObserver(name -> {
+            observe(param.name()).addValueObserver(name -> {
                 paramNames[idx] = name;
-                clientManager.broadcast("/state/remote_control/param", idx, paramNames[idx], (float) paramValues[idx]);
+                paramDirty[idx] = true;
+                received();
             });
 
-            param.value().addValueObserver(value -> {
+            observe(param.value()).addValueObserver(value -> {
                 paramValues[idx] = value;
-                clientManager.broadcast("/state/remote_control/param", idx, paramNames[idx], (float) paramValues[idx]);
+                paramDirty[idx] = true;
+                received();
             });
+        }
+    }
 
-            param.name().markInterested();
-            param.value().markInterested();
+    @Override
+    public String[] getAddresses() {
+        return ADDRESSES;
+    }
+
+    @Override
+    protected void markAllDirty() {
+        pageDirty = true;
+        Arrays.fill(paramDirty, true);
+    }
+
+    @Override
+    public void flush() {
+        if (pageDirty) {
+            pageDirty = false;
+            broadcastPage();
+        }
+        for (int i = 0; i < paramCount; i++) {
+            if (paramDirty[i]) {
+                paramDirty[i] = false;
+                clientManager.broadcast(paramTemplate, i, paramNames[i], (float) paramValues[i]);
+            }
         }
     }
 
@@ -71,10 +104,11 @@ public class RemoteControlsObserver {
         clientManager.broadcast("/state/remote_control/page", pageName, pageIndex, pageCount);
     }
 
-    public void sendSnapshot(OscConnection conn) {
-        clientManager.sendTo(conn, "/state/remote_control/page", pageName, pageIndex, pageCount);
+    @Override
+    public void sendSnapshot(OscSink sink) {
+        sink.send("/state/remote_control/page", pageName, pageIndex, pageCount);
         for (int i = 0; i < paramCount; i++) {
-            clientManager.sendTo(conn, "/state/remote_control/param", i, paramNames[i], (float) paramValues[i]);
+            sink.send("/state/remote_control/param", i, paramNames[i], (float) paramValues[i]);
         }
     }
 }
@@ -0,0 +1,82 @@
+package com.github.unthingable.harness.observers;
+
+import com.bitwig.extension.controller.api.Subscribable;
+import com.github.unthingable.harness.OscSink;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// An observer group whose Bitwig values are only subscribed while some client wants its addresses.
+// Its cached values are only trusted once the host has reported them since the group was (re)activated:
+// until then they hold defaults or whatever the host last sent before the group went idle.
+public abstract class StateObserver {
+
+    // A group whose values all still match what the host had before never hears back; trust it after this long
+    public static final int SETTLE_TIMEOUT_MS = 1000;
+    private static final long SETTLE_TIMEOUT_NS = SETTLE_TIMEOUT_MS * 1_000_000L;
+
+    private final List<Subscribable> values = new ArrayList<>();
+    // Values with observers attached start out subscribed
+    private boolean active = true;
+    private boolean ready = false;
+    private boolean received = false;
+    private long activatedAt = System.nanoTime();
+
+    protected <T extends Subscribable> T observe(T value) {
+        values.add(value);
+        return value;
+    }
+
+    public abstract String[] getAddresses();
+
+    public boolean isActive() {
+        return active;
+    }
+
+    // Active and holding values the host has reported since activation
+    public boolean isReady() {
+        return active && ready;
+    }
+
+    public void setActive(boolean active) {
+        if (this.active == active) {
+            return;
+        }
+        this.active = active;
+        ready = false;
+        received = false;
+        activatedAt = System.nanoTime();
+        for (Subscribable value : values) {
+            value.setIsSubscribed(active);
+        }
+    }
+
+    // Called from every host callback of the group
+    protected void received() {
+        received = true;
+    }
+
+    // Called on each host flush before the group's own flush. Returns whether the group may send:
+    // the first flush after the host reported in sends the whole group once.
+    public boolean settle() {
+        if (!active) {
+            return false;
+        }
+        if (!ready && (received || System.nanoTime() - activatedAt > SETTLE_TIMEOUT_NS)) {
+            ready = true;
+            markAllDirty();
+        }
+        return ready;
+    }
+
+    protected abstract void markAllDirty();
+
+    public abstract void flush();
+
+    public abstract void sendSnapshot(OscSink sink);
+
+    // Complete current state, for point queries; snapshots may leave out default entities
+    public void query(OscSink sink) {
+        sendSnapshot(sink);
+    }
+}
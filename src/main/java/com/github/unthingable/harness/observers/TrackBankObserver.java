@@ -1,13 +1,19 @@
 package com.github.unthingable.harness.observers;
 
-import com.bitwig.extension.api.opensoundcontrol.OscConnection;
 import com.bitwig.extension.controller.api.Track;
 import com.bitwig.extension.controller.api.TrackBank;
 import com.github.unthingable.harness.ClientManager;
+import com.github.unthingable.harness.OscSink;
+import com.github.unthingable.harness.StateTemplate;
 
-public class TrackBankObserver {
+import java.util.Arrays;
+
+public class TrackBankObserver extends StateObserver {
+
+    private static final String[] ADDRESSES = {"/state/track", "/state/track_bank"};
 
     private final ClientManager clientManager;
+    private final StateTemplate trackTemplate;
     private final int bankSize;
     private final String[] names;
     private final int[] positions;
@@ -16,10 +22,13 @@ public class TrackBankObserver {
     private final boolean[] solos;
     private final boolean[] arms;
     private final double[] volumes;
+    private final boolean[] dirty;
     private int scrollPosition = 0;
+    private boolean scrollDirty = false;
 
     public TrackBankObserver(TrackBank trackBank, ClientManager clientManager, int bankSize) {
         this.clientManager = clientManager;
+        this.trackTemplate = new StateTemplate("/state/track", "isisiiid", bankSize);
         this.bankSize = bankSize;
         this.names = new String[bankSize];
         this.positions = new int[bankSize];
@@ -28,6 +37,7 @@ public class TrackBankObserver {
         this.solos = new boolean[bankSize];
         this.arms = new boolean[bankSize];
         this.volumes = new double[bankSize];
+        this.dirty = new boolean[bankSize];
 
         for (int i = 0; i < bankSize; i++) {
             names[i] = "";
@@ -43,59 +53,83 @@ public class TrackBankObserver {
             final int idx = i;
             Track track = trackBank.getItemAt(i);
 
-            track.name().addValueObserver(name -> {
+            observe(track.name()).addValueObserver(name -> {
                 names[idx] = name;
-                broadcastTrack(idx);
+                dirty[idx] = true;
+                received();
             });
 
-            track.position().addValueObserver(position -> {
+            observe(track.position()).addValueObserver(position -> {
                 positions[idx] = position;
-                broadcastTrack(idx);
+                dirty[idx] = true;
+                received();
             });
 
-            track.trackType().addValueObserver(type -> {
+            observe(track.trackType()).addValueObserver(type -> {
                 types[idx] = type;
-                broadcastTrack(idx);
+                dirty[idx] = true;
+                received();
             });
 
-            track.mute().addValueObserver(mute -> {
+            observe(track.mute()).addValueObserver(mute -> {
                 mutes[idx] = mute;
-                broadcastTrack(idx);
+                dirty[idx] = true;
+                received();
             });
 
-            track.solo().addValueObserver(solo -> {
+            observe(track.solo()).addValueObserver(solo -> {
                 solos[idx] = solo;
-                broadcastTrack(idx);
+                dirty[idx] = true;
+                received();
             });
 
-            track.arm().addValueObserver(arm -> {
+            observe(track.arm()).addValueObserver(arm -> {
                 arms[idx] = arm;
-                broadcastTrack(idx);
+                dirty[idx] = true;
+                received();
             });
 
-            track.volume().value().addValueObserver(volume -> {
+            observe(track.volume().value()).addValueObserver(volume -> {
                 volumes[idx] = volume;
-                broadcastTrack(idx);
+                dirty[idx] = true;
+                received();
             });
-
-            track.name().markInterested();
-            track.position().markInterested();
-            track.trackType().markInterested();
-            track.mute().markInterested();
-            track.solo().markInterested();
-            track.arm().markInterested();
-            track.volume().value().markInterested();
         }
 
-        trackBank.scrollPosition().addValueObserver(pos -> {
+        observe(trackBank.scrollPosition()).addValueObserver(pos -> {
             scrollPosition = pos;
-            broadcastScrollPosition();
+            scrollDirty = true;
+            received();
         });
-        trackBank.scrollPosition().markInterested();
+    }
+
+    @Override
+    public String[] getAddresses() {
+        return ADDRESSES;
+    }
+
+    @Override
+    protected void markAllDirty() {
+        Arrays.fill(dirty, true);
+        scrollDirty = true;
+    }
+
+    @Override
+    public void flush() {
+        for (int i = 0; i < bankSize; i++) {
+            if (dirty[i]) {
+                dirty[i] = false;
+                broadcastTrack(i);
+            }
+        }
+        if (scrollDirty) {
+            scrollDirty = false;
+            broadcastScrollPosition();
+        }
     }
 
     private void broadcastTrack(int bankIndex) {
-        clientManager.broadcast("/state/track", bankIndex, names[bankIndex], positions[bankIndex], types[bankIndex],
+        clientManager.broadcast(trackTemplate, bankIndex, names[bankIndex], positions[bankIndex], types[bankIndex],
                 mutes[bankIndex] ? 1 : 0, solos[bankIndex] ? 1 : 0, arms[bankIndex] ? 1 : 0, volumes[bankIndex]);
     }
 
@@ -103,11 +137,12 @@ public class TrackBankObserver {
         clientManager.broadcast("/state/track_bank", scrollPosition);
     }
 
-    public void sendSnapshot(OscConnection conn) {
+    @Override
+    public void sendSnapshot(OscSink sink) {
         for (int i = 0; i < bankSize; i++) {
-            clientManager.sendTo(conn, "/state/track", i, names[i], positions[i], types[i],
+            sink.send("/state/track", i, names[i], positions[i], types[i],
                     mutes[i] ? 1 : 0, solos[i] ? 1 : 0, arms[i] ? 1 : 0, volumes[i]);
         }
-        clientManager.sendTo(conn, "/state/track_bank", scrollPosition);
+        sink.send("/state/track_bank", scrollPosition);
     }
 }
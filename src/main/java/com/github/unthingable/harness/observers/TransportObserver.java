@@ -1,27 +1,27 @@
 package com.github.unthingable.harness.observers;
 
-import com.bitwig.extension.api.opensoundcontrol.OscConnection;
 import com.bitwig.extension.controller.api.Transport;
 import com.github.unthingable.harness.ClientManager;
+import com.github.unthingable.harness.OscSink;
 
-public class TransportObserver {
+public class TransportObserver extends StateObserver {
+
+    private static final String[] ADDRESSES = {"/state/transport"};
 
     private final ClientManager clientManager;
     private String currentState = "stopped";
+    private boolean dirty = false;
 
     public TransportObserver(Transport transport, ClientManager clientManager) {
         this.clientManager = clientManager;
 
-        transport.isPlaying().addValueObserver(isPlaying -> {
+        observe(transport.isPlaying()).addValueObserver(isPlaying -> {
             updateState(isPlaying, transport.isArrangerRecordEnabled().get());
         });
 
-        transport.isArrangerRecordEnabled().addValueObserver(isRecording -> {
+        observe(transport.isArrangerRecordEnabled()).addValueObserver(isRecording -> {
             updateState(transport.isPlaying().get(), isRecording);
         });
-
-        transport.isPlaying().markInterested();
-        transport.isArrangerRecordEnabled().markInterested();
     }
 
     private void updateState(boolean isPlaying, boolean isRecording) {
@@ -32,10 +32,30 @@ public class TransportObserver {
         } else {
             currentState = "stopped";
         }
-        clientManager.broadcast("/state/transport", currentState);
+        dirty = true;
+        received();
+    }
+
+    @Override
+    public String[] getAddresses() {
+        return ADDRESSES;
+    }
+
+    @Override
+    protected void markAllDirty() {
+        dirty = true;
+    }
+
+    @Override
+    public void flush() {
+        if (dirty) {
+            dirty = false;
+            clientManager.broadcast("/state/transport", currentState);
+        }
     }
 
-    public void sendSnapshot(OscConnection conn) {
-        clientManager.sendTo(conn, "/state/transport", currentState);
+    @Override
+    public void sendSnapshot(OscSink sink) {
+        sink.send("/state/transport", currentState);
     }
 }
@@ -0,0 +1,179 @@
+package com.github.unthingable.harness;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClientQueueTest {
+
+    private static final int CAPACITY = 4;
+
+    private final ClientQueue queue = new ClientQueue(
+            new ClientConnection(null, new InetSocketAddress("127.0.0.1", 9001)), CAPACITY, 0, 16);
+
+    private static OutboundMessage event(int value) {
+        return OutboundMessage.unkeyed(new byte[] {(byte) value});
+    }
+
+    private static OutboundMessage state(Object key, int value) {
+        return new OutboundMessage(key, new byte[] {(byte) value}, true);
+    }
+
+    private List<OutboundMessage> drain() {
+        List<OutboundMessage> messages = new ArrayList<>();
+        for (OutboundMessage message = queue.poll(); message != null; message = queue.poll()) {
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    @Test
+    void stateIsQueuedBehindEventsBeyondCapacity() {
+        for (int i = 0; i < CAPACITY * 2; i++) {
+            queue.offer(event(i));
+        }
+        OutboundMessage track = state("track 3", 1);
+        queue.offer(track);
+
+        List<OutboundMessage> sent = drain();
+        assertEquals(CAPACITY * 2 + 1, sent.size());
+        assertSame(track, sent.get(sent.size() - 1));
+    }
+
+    @Test
+    void stateIsNeverDroppedWhateverTheNumberOfKeys() {
+        for (int i = 0; i < CAPACITY * 4; i++) {
+            queue.offer(state("clip " + i, i));
+        }
+        assertEquals(CAPACITY * 4, drain().size());
+        assertTrue(queue.describeStats().contains("overflowed 0"));
+    }
+
+    @Test
+    void eventsBeyondCapacityAreKeptAndCountedAsOverflow() {
+        for (int i = 0; i < CAPACITY + 2; i++) {
+            queue.offer(event(i));
+        }
+        assertEquals(CAPACITY + 2, drain().size());
+        assertTrue(queue.describeStats().contains("overflowed 2"));
+    }
+
+    @Test
+    void overflowCountsOnlyEventsStillQueued() {
+        for (int i = 0; i < CAPACITY; i++) {
+            queue.offer(event(i));
+        }
+        queue.poll();
+        queue.offer(state("track 0", 0));
+        queue.offer(event(CAPACITY));
+        assertTrue(queue.describeStats().contains("overflowed 0"));
+    }
+
+    @Test
+    void fullMessageSupersedesQueuedDeltasOfItsEntity() {
+        Object track = StateSchema.keyOf("/state/track", 3);
+        queue.offer(state(track, 1));
+        queue.offer(state(StateSchema.fieldKeyOf(track, 4), 1));
+        OutboundMessage latest = state(track, 2);
+        queue.offer(latest);
+
+        assertEquals(List.of(latest), drain());
+    }
+
+    @Test
+    void deltaAfterFullMessageIsSentAfterIt() {
+        Object track = StateSchema.keyOf("/state/track", 3);
+        OutboundMessage full = state(track, 1);
+        OutboundMessage mute = state(StateSchema.fieldKeyOf(track, 4), 1);
+        queue.offer(full);
+        queue.offer(mute);
+
+        assertEquals(List.of(full, mute), drain());
+    }
+
+    @Test
+    void replayedDeltaYieldsToQueuedFullMessage() {
+        Object track = StateSchema.keyOf("/state/track", 3);
+        OutboundMessage full = state(track, 2);
+        queue.offer(full);
+        queue.offerReplayed(List.of(state(StateSchema.fieldKeyOf(track, 4), 1)));
+
+        assertEquals(List.of(full), drain());
+    }
+
+    @Test
+    void queuedDeltasMoveBehindReplayedFullMessage() {
+        Object track = StateSchema.keyOf("/state/track", 3);
+        OutboundMessage mute = state(StateSchema.fieldKeyOf(track, 4), 1);
+        OutboundMessage replayed = state(track, 0);
+        queue.offer(mute);
+        assertFalse(queue.offerReplayed(List.of(replayed)));
+
+        assertEquals(List.of(replayed, mute), drain());
+    }
+
+    @Test
+    void resyncDoesNotReplayDeltaBeforeLaterFullMessage() {
+        Object track = StateSchema.keyOf("/state/track", 3);
+        ReplayRing ring = queue.getReplayRing();
+        ring.add(1, state(StateSchema.fieldKeyOf(track, 4), 1));
+        OutboundMessage full = state(track, 0);
+        ring.add(2, full);
+        assertTrue(queue.offerReplayed(ring.since(0)));
+
+        assertEquals(List.of(full), drain());
+    }
+
+    @Test
+    void replayedDeltaAfterReplayedFullMessageFollowsIt() {
+        Object track = StateSchema.keyOf("/state/track", 3);
+        ReplayRing ring = queue.getReplayRing();
+        OutboundMessage full = state(track, 0);
+        OutboundMessage mute = state(StateSchema.fieldKeyOf(track, 4), 1);
+        ring.add(1, full);
+        ring.add(2, mute);
+        queue.offerReplayed(ring.since(0));
+
+        assertEquals(List.of(full, mute), drain());
+    }
+
+    @Test
+    void eventsPastStallLimitMarkQueueStalledAndAreDropped() {
+        ClientQueue limited = new ClientQueue(
+                new ClientConnection(null, new InetSocketAddress("127.0.0.1", 9001)), CAPACITY, CAPACITY * 2, 16);
+        for (int i = 0; i < CAPACITY * 2; i++) {
+            limited.offer(event(i));
+        }
+        assertFalse(limited.isStalled());
+        limited.offer(event(CAPACITY * 2));
+        limited.offer(state("track 3", 1));
+
+        assertTrue(limited.isStalled());
+        int sent = 0;
+        while (limited.poll() != null) {
+            sent++;
+        }
+        assertEquals(CAPACITY * 2 + 1, sent);
+    }
+
+    @Test
+    void stateConflatesInPlace() {
+        queue.offer(state("track 3", 1));
+        queue.offer(event(0));
+        OutboundMessage latest = state("track 3", 2);
+        queue.offer(latest);
+
+        List<OutboundMessage> sent = drain();
+        assertEquals(2, sent.size());
+        assertSame(latest, sent.get(0));
+        assertNull(queue.poll());
+    }
+}
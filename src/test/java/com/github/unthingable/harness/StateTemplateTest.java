@@ -0,0 +1,44 @@
+package com.github.unthingable.harness;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StateTemplateTest {
+
+    private final StateTemplate track = new StateTemplate("/state/track", "isisiiid", 8);
+
+    @Test
+    void encodesLikeTheGenericEncoder() {
+        Object[] args = {3, "Bass", 3, "audio", 1, 0, 0, 0.75};
+        assertArrayEquals(OscEncoder.encodeSequencedMessage("/state/track", args), track.encode(args));
+    }
+
+    @Test
+    void reencodesStringsThatChanged() {
+        track.encode(new Object[] {2, "Bass", 2, "audio", 0, 0, 0, 0.5});
+        Object[] renamed = {2, "Bässe und Schlagzeug", 2, "audio", 0, 0, 0, 0.5};
+        assertArrayEquals(OscEncoder.encodeSequencedMessage("/state/track", renamed), track.encode(renamed));
+    }
+
+    @Test
+    void keysMatchTheSchema() {
+        Object[] args = {5, "Keys", 5, "instrument", 0, 1, 0, 0.0};
+        assertEquals(StateSchema.keyOf("/state/track", args), track.keyOf(args));
+
+        StateTemplate page = new StateTemplate("/state/remote_control/page", "sii", 1);
+        Object[] pageArgs = {"Main", 0, 4};
+        assertEquals(StateSchema.keyOf("/state/remote_control/page", pageArgs), page.keyOf(pageArgs));
+        assertArrayEquals(OscEncoder.encodeSequencedMessage("/state/remote_control/page", pageArgs),
+                page.encode(pageArgs));
+    }
+
+    @Test
+    void rejectsShapesTheSchemaDoesNotHave() {
+        assertThrows(IllegalArgumentException.class, () -> new StateTemplate("/state/track", "isf", 8));
+        assertThrows(IllegalArgumentException.class, () -> new StateTemplate("/state/clip", "iiiii", 8));
+        assertThrows(IllegalArgumentException.class, () -> new StateTemplate("/midi/in", "iiii", 1));
+    }
+}
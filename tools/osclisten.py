@@ -1,6 +1,12 @@
 #!/usr/bin/env python3
-"""Dual-stack (IPv4+IPv6) OSC listener. Replaces oscdump for testing."""
+"""Dual-stack (IPv4+IPv6) OSC listener. Replaces oscdump for testing.
 
+Usage: osclisten.py [port]              UDP
+       osclisten.py --tcp [port]        SLIP-framed stream on 127.0.0.1, for /connect/tcp
+       osclisten.py --unix PATH         SLIP-framed stream on a Unix domain socket, for /connect/unix
+"""
+
+import os
 import socket
 import struct
 import sys
@@ -40,14 +46,44 @@ def parse_osc_message(data):
         elif t == "d":
             args.append(struct.unpack(">d", data[offset : offset + 8])[0])
             offset += 8
+        elif t == "b":
+            size = struct.unpack(">i", data[offset : offset + 4])[0]
+            args.append(data[offset + 4 : offset + 4 + size].hex())
+            offset += 4 + size + (-size % 4)
+        elif t in "TFN":
+            args.append({"T": True, "F": False, "N": None}[t])
         else:
             args.append(f"<{t}?>")
     return address, type_tag, args
 
 
-def main():
-    port = int(sys.argv[1]) if len(sys.argv) > 1 else 9001
+def parse_osc_packet(data):
+    """Parse an OSC packet into a list of (address, type_tag, args), unpacking bundles."""
+    if not data.startswith(b"#bundle\0"):
+        return [parse_osc_message(data)]
+    messages = []
+    offset = 16  # "#bundle\0" + 8-byte time tag
+    while offset < len(data):
+        size = struct.unpack(">i", data[offset : offset + 4])[0]
+        messages.extend(parse_osc_packet(data[offset + 4 : offset + 4 + size]))
+        offset += 4 + size
+    return messages
+
 
+SLIP_END, SLIP_ESC = 0xC0, 0xDB
+SLIP_UNESCAPE = {0xDC: 0xC0, 0xDD: 0xDB}
+
+
+def print_packet(data, source):
+    try:
+        for address, type_tag, args in parse_osc_packet(data):
+            args_str = " ".join(str(a) for a in args)
+            print(f"{address} {type_tag} {args_str}", flush=True)
+    except Exception as e:
+        print(f"<parse error: {e}, {len(data)} bytes from {source}>", flush=True)
+
+
+def listen_udp(port):
     sock = socket.socket(socket.AF_INET6, socket.SOCK_DGRAM)
     sock.setsockopt(socket.IPPROTO_IPV6, socket.IPV6_V6ONLY, 0)
     sock.setsockopt(socket.SOL_SOCKET, socket.SO_REUSEADDR, 1)
@@ -57,16 +93,62 @@ def main():
     try:
         while True:
             data, addr = sock.recvfrom(65536)
+            print_packet(data, addr)
+    finally:
+        sock.close()
+
+
+def listen_stream(server, description):
+    """Accept one connection at a time and print its SLIP-framed packets (OSC 1.1)."""
+    server.listen(1)
+    print(f"Listening on {description} (SLIP)", file=sys.stderr)
+    try:
+        while True:
+            conn, _ = server.accept()
+            print(f"<connected on {description}>", file=sys.stderr)
+            frame, escaped = bytearray(), False
+            with conn:
+                while chunk := conn.recv(65536):
+                    for b in chunk:
+                        if b == SLIP_END:
+                            if frame:
+                                print_packet(bytes(frame), description)
+                                frame = bytearray()
+                        elif escaped:
+                            frame.append(SLIP_UNESCAPE.get(b, b))
+                            escaped = False
+                        elif b == SLIP_ESC:
+                            escaped = True
+                        else:
+                            frame.append(b)
+            print(f"<disconnected on {description}>", file=sys.stderr)
+    finally:
+        server.close()
+
+
+def main():
+    args = sys.argv[1:]
+    try:
+        if args[:1] == ["--tcp"]:
+            port = int(args[1]) if len(args) > 1 else 9001
+            server = socket.socket(socket.AF_INET, socket.SOCK_STREAM)
+            server.setsockopt(socket.SOL_SOCKET, socket.SO_REUSEADDR, 1)
+            server.bind(("127.0.0.1", port))
+            listen_stream(server, f"127.0.0.1:{port}")
+        elif args[:1] == ["--unix"]:
+            path = args[1]
+            if os.path.exists(path):
+                os.unlink(path)
+            server = socket.socket(socket.AF_UNIX, socket.SOCK_STREAM)
+            server.bind(path)
             try:
-                address, type_tag, args = parse_osc_message(data)
-                args_str = " ".join(str(a) for a in args)
-                print(f"{address} {type_tag} {args_str}", flush=True)
-            except Exception as e:
-                print(f"<parse error: {e}, {len(data)} bytes from {addr}>", flush=True)
+                listen_stream(server, path)
+            finally:
+                os.unlink(path)
+        else:
+            listen_udp(int(args[0]) if args else 9001)
     except KeyboardInterrupt:
         pass
-    finally:
-        sock.close()
 
 
 if __name__ == "__main__":
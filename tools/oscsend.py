@@ -24,12 +24,15 @@ def encode_osc(address, type_args):
             msg += struct.pack(">f", float(v))
         elif t == "s":
             msg += pad(v.encode() + b"\0")
+        elif t == "b":
+            blob = bytes.fromhex(v)
+            msg += struct.pack(">i", len(blob)) + pad(blob)
     return msg
 
 
 def main():
     if len(sys.argv) < 3:
-        print("Usage: oscsend.py <host> <port> <address> [type value ...]", file=sys.stderr)
+        print("Usage: oscsend.py <host> <port> <address> [type value ...]  (types: i f s b=hex blob)", file=sys.stderr)
         sys.exit(1)
 
     host = sys.argv[1]
@@ -41,7 +44,7 @@ def main():
     i = 4
     while i < len(sys.argv):
         t = sys.argv[i]
-        if t in ("i", "f", "s") and i + 1 < len(sys.argv):
+        if t in ("i", "f", "s", "b") and i + 1 < len(sys.argv):
             type_args.append((t, sys.argv[i + 1]))
             i += 2
         else: